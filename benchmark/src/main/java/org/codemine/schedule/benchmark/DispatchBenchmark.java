@@ -0,0 +1,69 @@
+package org.codemine.schedule.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.codemine.schedule.TimeUnit;
+import org.codemine.schedule.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one server tick with a given number of live repeating tasks, each running once a second with their start
+ * spread evenly so a twentieth of them are due on every tick.
+ * <p><tt>SCHEDULER</tt> registers every task with the Bukkit scheduler, <tt>WHEEL</tt> registers them on a
+ * {@link org.codemine.schedule.TimingWheel} which is itself the only task the scheduler knows about.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5,time = 1)
+@Measurement(iterations = 5,time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    private static final long PERIOD = 20L;
+
+    public enum Target {
+        SCHEDULER, WHEEL
+    }
+
+    @Param({"1000","10000","100000"})
+    public int liveTasks;
+    @Param({"SCHEDULER","WHEEL"})
+    public Target target;
+    private TimingWheel wheel;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        StandInServer.claimPrimary();
+        final Plugin plugin = StandInServer.plugin();
+        wheel = new TimingWheel(plugin);
+        wheel.start();
+        for (int i = 0; i < liveTasks; i++) {
+            final ScheduleBenchmark.Noop task = new ScheduleBenchmark.Noop();
+            if (target == Target.WHEEL) {
+                task.runTaskTimer(wheel,i % PERIOD,PERIOD,TimeUnit.TICKS);
+            } else {
+                task.runTaskTimer(plugin,i % PERIOD,PERIOD);
+            }
+        }
+    }
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        wheel.stop();
+    }
+    @Benchmark
+    public void tick(){
+        StandInServer.scheduler().heartbeat();
+    }
+}
@@ -0,0 +1,109 @@
+package org.codemine.schedule.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.codemine.schedule.BukkitRun;
+import org.codemine.schedule.TimeUnit;
+import org.codemine.schedule.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of scheduling and then cancelling a delayed <tt>BukkitRun</tt>, through the Bukkit scheduler and through a
+ * {@link org.codemine.schedule.TimingWheel}.
+ * <p>The single thread benchmarks schedule from the main thread and run a server tick every 1024 operations so cancelled
+ * tasks are cleared out. The contended groups schedule from 3 worker threads while a 4th thread acts as the main thread
+ * and runs ticks as fast as it can.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5,time = 1)
+@Measurement(iterations = 5,time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScheduleBenchmark {
+
+    private static final long DELAY = 100L;
+
+    private Plugin plugin;
+    private TimingWheel wheel;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        plugin = StandInServer.plugin();
+        wheel = new TimingWheel(plugin);
+        wheel.start();
+    }
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        wheel.stop();
+    }
+    @Benchmark
+    public void bukkitScheduleCancel(Ticker ticker){
+        StandInServer.claimPrimary();
+        new Noop().runTaskLater(plugin,DELAY).cancel();
+        ticker.maybeTick();
+    }
+    @Benchmark
+    public void wheelScheduleCancel(Ticker ticker){
+        StandInServer.claimPrimary();
+        new Noop().runTaskLater(wheel,DELAY,TimeUnit.TICKS).cancel();
+        ticker.maybeTick();
+    }
+    @Benchmark
+    @Group("bukkitContended")
+    @GroupThreads(3)
+    public void bukkitContendedScheduleCancel(){
+        new Noop().runTaskLater(plugin,DELAY).cancel();
+    }
+    @Benchmark
+    @Group("bukkitContended")
+    @GroupThreads(1)
+    public void bukkitContendedTick(){
+        StandInServer.claimPrimary();
+        StandInServer.scheduler().heartbeat();
+    }
+    @Benchmark
+    @Group("wheelContended")
+    @GroupThreads(3)
+    public void wheelContendedScheduleCancel(){
+        new Noop().runTaskLater(wheel,DELAY,TimeUnit.TICKS).cancel();
+    }
+    @Benchmark
+    @Group("wheelContended")
+    @GroupThreads(1)
+    public void wheelContendedTick(){
+        StandInServer.claimPrimary();
+        StandInServer.scheduler().heartbeat();
+    }
+
+    @State(Scope.Thread)
+    public static class Ticker {
+
+        private int count;
+
+        void maybeTick(){
+            if ((++count & 1023) == 0) {
+                StandInServer.scheduler().heartbeat();
+            }
+        }
+    }
+
+    static final class Noop extends BukkitRun {
+
+        @Override
+        public void run(){
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.codemine.schedule.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for the Bukkit scheduler with the same shape as the real one: tasks can be added from any thread
+ * into a pending queue, which the main thread moves into a priority queue ordered by the tick they are due on each
+ * {@link #heartbeat()}. Asynchronous tasks are run inline, the benchmarks only measure the cost of scheduling them.
+ * <p>Only the methods used by <tt>BukkitRun</tt> are implemented, {@link org.codemine.schedule.benchmark.StandInServer}
+ * routes calls on the Bukkit interface here by name.</p>
+ */
+public final class StandInScheduler {
+
+    private final AtomicInteger ids = new AtomicInteger();
+    private final ConcurrentLinkedQueue<StandInTask> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<Integer,StandInTask> tasks = new ConcurrentHashMap<>();
+    private final PriorityQueue<StandInTask> queue = new PriorityQueue<>(64,new Comparator<StandInTask>() {
+
+        public int compare(StandInTask a,StandInTask b){
+            return a.nextRun < b.nextRun ? -1 : (a.nextRun == b.nextRun ? Integer.compare(a.getTaskId(),b.getTaskId()) : 1);
+        }
+    });
+    private volatile long currentTick;
+
+    public BukkitTask runTask(Plugin plugin,Runnable task){
+        return add(plugin,task,true,0L,0L);
+    }
+    public BukkitTask runTaskAsynchronously(Plugin plugin,Runnable task){
+        return add(plugin,task,false,0L,0L);
+    }
+    public BukkitTask runTaskLater(Plugin plugin,Runnable task,long delay){
+        return add(plugin,task,true,delay,0L);
+    }
+    public BukkitTask runTaskLaterAsynchronously(Plugin plugin,Runnable task,long delay){
+        return add(plugin,task,false,delay,0L);
+    }
+    public BukkitTask runTaskTimer(Plugin plugin,Runnable task,long delay,long period){
+        return add(plugin,task,true,delay,Math.max(1L,period));
+    }
+    public BukkitTask runTaskTimerAsynchronously(Plugin plugin,Runnable task,long delay,long period){
+        return add(plugin,task,false,delay,Math.max(1L,period));
+    }
+    public void cancelTask(int taskId){
+        final StandInTask task = tasks.remove(taskId);
+        if (task != null) {
+            task.markCancelled();
+        }
+    }
+    public boolean isQueued(int taskId){
+        return tasks.containsKey(taskId);
+    }
+    /**
+     * Gets the number of tasks that have not finished or been cancelled.
+     */
+    public int size(){
+        return tasks.size();
+    }
+    /**
+     * Runs one server tick, every task that is due is run on the calling thread.
+     */
+    public void heartbeat(){
+        final long now = ++currentTick;
+        StandInTask task;
+        while ((task = pending.poll()) != null) {
+            if (!task.isCancelled()) {
+                task.nextRun += now;
+                queue.add(task);
+            }
+        }
+        while ((task = queue.peek()) != null && task.nextRun <= now) {
+            queue.poll();
+            if (task.isCancelled()) {
+                continue;
+            }
+            task.task.run();
+            if (task.period > 0L && !task.isCancelled()) {
+                task.nextRun = now + task.period;
+                queue.add(task);
+            } else {
+                tasks.remove(task.getTaskId());
+            }
+        }
+    }
+    private BukkitTask add(Plugin plugin,Runnable runnable,boolean sync,long delay,long period){
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        final StandInTask task = new StandInTask(this,plugin,runnable,ids.incrementAndGet(),sync,Math.max(0L,delay),period);
+        tasks.put(task.getTaskId(),task);
+        pending.add(task);
+        return task;
+    }
+}
@@ -0,0 +1,128 @@
+package org.codemine.schedule.benchmark;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Installs a stand-in {@link org.bukkit.Server} so <tt>BukkitRun</tt> can be benchmarked without a running server.
+ * <p>The Bukkit interfaces are implemented with dynamic proxies, calls the stand-in understands are routed to the
+ * {@link org.codemine.schedule.benchmark.StandInScheduler}, everything else throws <tt>UnsupportedOperationException</tt>.
+ * The proxies add a small constant cost to every call into Bukkit, which is the same for every path being compared.</p>
+ */
+public final class StandInServer {
+
+    private static final Logger LOGGER = Logger.getLogger("StandIn");
+    private static final StandInScheduler SCHEDULER = new StandInScheduler();
+    private static final BukkitScheduler BUKKIT_SCHEDULER = proxy(BukkitScheduler.class,new Forward(SCHEDULER));
+    private static final Plugin PLUGIN;
+    private static volatile Thread primary;
+
+    static {
+        Bukkit.setServer(proxy(Server.class,new InvocationHandler() {
+
+            public Object invoke(Object proxy,Method method,Object[] args){
+                switch (method.getName()) {
+                    case "getScheduler":
+                        return BUKKIT_SCHEDULER;
+                    case "isPrimaryThread":
+                        return Thread.currentThread() == primary;
+                    case "getLogger":
+                        return LOGGER;
+                    case "getName":
+                    case "getVersion":
+                    case "getBukkitVersion":
+                        return "StandIn";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        }));
+        PLUGIN = proxy(Plugin.class,new InvocationHandler() {
+
+            public Object invoke(Object proxy,Method method,Object[] args){
+                switch (method.getName()) {
+                    case "getServer":
+                        return Bukkit.getServer();
+                    case "getLogger":
+                        return LOGGER;
+                    case "getName":
+                    case "toString":
+                        return "StandInPlugin";
+                    case "isEnabled":
+                        return true;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    private StandInServer(){
+    }
+    /**
+     * Gets the stand-in scheduler, also returned by <tt>Bukkit.getScheduler()</tt>.
+     */
+    public static StandInScheduler scheduler(){
+        return SCHEDULER;
+    }
+    /**
+     * Gets a plugin that can own tasks.
+     */
+    public static Plugin plugin(){
+        return PLUGIN;
+    }
+    /**
+     * Makes the calling thread the server's main thread.
+     */
+    public static void claimPrimary(){
+        final Thread current = Thread.currentThread();
+        if (primary != current) {
+            primary = current;
+        }
+    }
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type,InvocationHandler handler){
+        return (T) Proxy.newProxyInstance(type.getClassLoader(),new Class<?>[]{type},handler);
+    }
+
+    private static final class Forward implements InvocationHandler {
+
+        private final Object target;
+        private final ConcurrentMap<Method,Method> methods = new ConcurrentHashMap<>();
+
+        Forward(Object target){
+            this.target = target;
+        }
+        @Override
+        public Object invoke(Object proxy,Method method,Object[] args) throws Throwable{
+            Method local = methods.get(method);
+            if (local == null) {
+                try {
+                    local = target.getClass().getMethod(method.getName(),method.getParameterTypes());
+                } catch (NoSuchMethodException e) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                methods.put(method,local);
+            }
+            try {
+                return local.invoke(target,args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
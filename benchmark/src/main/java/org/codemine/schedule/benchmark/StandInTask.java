@@ -0,0 +1,51 @@
+package org.codemine.schedule.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * A task held by the {@link org.codemine.schedule.benchmark.StandInScheduler}.
+ */
+final class StandInTask implements BukkitTask {
+
+    final Runnable task;
+    final long period;
+    long nextRun;
+    private final StandInScheduler scheduler;
+    private final Plugin owner;
+    private final int id;
+    private final boolean sync;
+    private volatile boolean cancelled;
+
+    StandInTask(StandInScheduler scheduler,Plugin owner,Runnable task,int id,boolean sync,long nextRun,long period){
+        this.scheduler = scheduler;
+        this.owner = owner;
+        this.task = task;
+        this.id = id;
+        this.sync = sync;
+        this.nextRun = nextRun;
+        this.period = period;
+    }
+    @Override
+    public int getTaskId(){
+        return id;
+    }
+    @Override
+    public Plugin getOwner(){
+        return owner;
+    }
+    @Override
+    public boolean isSync(){
+        return sync;
+    }
+    @Override
+    public void cancel(){
+        scheduler.cancelTask(id);
+    }
+    boolean isCancelled(){
+        return cancelled;
+    }
+    void markCancelled(){
+        cancelled = true;
+    }
+}
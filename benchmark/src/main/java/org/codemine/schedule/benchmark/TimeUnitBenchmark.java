@@ -0,0 +1,89 @@
+package org.codemine.schedule.benchmark;
+
+import org.codemine.schedule.Duration;
+import org.codemine.schedule.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link org.codemine.schedule.TimeUnit} conversions.
+ * <p>The monomorphic benchmarks convert with a single unit so the JIT can inline the enum constant's method, the
+ * megamorphic one cycles through every unit the way a config driven plugin would. The saturating benchmark takes the
+ * overflow branch of the multiplier check on every call. The packed benchmarks do the same through
+ * {@link org.codemine.schedule.Duration}, and parse a config string that is already cached.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5,time = 1)
+@Measurement(iterations = 5,time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeUnitBenchmark {
+
+    private static final TimeUnit[] UNITS = TimeUnit.values();
+    private static final String[] TEXTS = {"40t","15s","1h30m","2d","1m 30s"};
+
+    @Param({"TICKS","SECONDS","MINUTES","HOURS","DAYS"})
+    public TimeUnit unit;
+    private long duration;
+    private long packed;
+    private long[] allPacked;
+    private int index;
+
+    @Setup
+    public void setup(){
+        duration = 37L;
+        packed = Duration.of(duration,unit);
+        allPacked = new long[UNITS.length];
+        for (int i = 0; i < UNITS.length; i++) {
+            allPacked[i] = Duration.of(duration,UNITS[i]);
+        }
+    }
+    @Benchmark
+    public long toTicks(){
+        return unit.toTicks(duration);
+    }
+    @Benchmark
+    public long toMillis(){
+        return unit.toMillis(duration);
+    }
+    @Benchmark
+    public long convertToTicks(){
+        return TimeUnit.TICKS.convert(duration,unit);
+    }
+    @Benchmark
+    public long toTicksSaturating(){
+        return unit.toTicks(Long.MAX_VALUE - duration);
+    }
+    @Benchmark
+    public long toTicksMegamorphic(){
+        final int i = index;
+        index = i + 1 == UNITS.length ? 0 : i + 1;
+        return UNITS[i].toTicks(duration);
+    }
+    @Benchmark
+    public long packedToTicks(){
+        return Duration.toTicks(packed);
+    }
+    @Benchmark
+    public long packedToTicksMixed(){
+        final int i = index;
+        index = i + 1 == allPacked.length ? 0 : i + 1;
+        return Duration.toTicks(allPacked[i]);
+    }
+    @Benchmark
+    public long parseCached(){
+        final int i = index;
+        index = i + 1 == TEXTS.length ? 0 : i + 1;
+        return Duration.parse(TEXTS[i]);
+    }
+}
@@ -0,0 +1,345 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An <tt>AsyncExecutor</tt> runs asynchronous <tt>BukkitRun</tt> work on a pool you control instead of Bukkit's async scheduler.
+ * <p>The Bukkit async scheduler starts a new thread whenever every existing one is busy and has no way to push back, so a burst
+ * of work such as a world save can create hundreds of threads. An <tt>AsyncExecutor</tt> can instead be</p>
+ * <ol>
+ *     <li>{@link #bounded(String,int,int,RejectionPolicy)} a fixed number of threads with a queue limit and a {@link RejectionPolicy}</li>
+ *     <li>{@link #forkJoin(int)} a work stealing fork-join pool</li>
+ *     <li>{@link #virtual(String)} a virtual thread per task, on a runtime that supports them</li>
+ * </ol>
+ * <p>It can be passed to the <tt>BukkitRun</tt> overloads that take one, or installed with {@link #setDefault(AsyncExecutor)} in which
+ * case every asynchronous <tt>BukkitRun</tt>, {@link org.codemine.schedule.TimingWheel} and {@link org.codemine.schedule.TaskFuture} uses it.
+ * Delayed and repeating tasks still use the Bukkit scheduler for timing, only the run itself is handed to the executor.</p>
+ * <p>Work dropped by the DISCARD or DISCARD_OLDEST policy, or turned away after a shutdown, is not lost without a trace. A one shot
+ * <tt>BukkitRun</tt> that is dropped is cancelled, a repeating one tries again on its next run and a <tt>TaskFuture</tt> stage fails
+ * with a {@link java.util.concurrent.RejectedExecutionException}.</p>
+ * <hr>
+ * An example usage can be seen below. All async work runs on 4 threads with at most 1000 tasks waiting.
+ * <tt>
+ * <pre>
+ * {@code
+ * AsyncExecutor.setDefault(AsyncExecutor.bounded("MyPlugin",4,1000,AsyncExecutor.RejectionPolicy.CALLER_RUNS));
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class AsyncExecutor implements Executor {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncExecutor.class.getName());
+    private static volatile AsyncExecutor defaultExecutor;
+
+    private final ExecutorService service;
+    private final RejectionPolicy policy;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private AsyncExecutor(ExecutorService service,RejectionPolicy policy){
+        this.service = service;
+        this.policy = policy;
+    }
+    /**
+     * What a bounded executor does with a task when its queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Throws a {@link java.util.concurrent.RejectedExecutionException} to the caller.
+         */
+        ABORT,
+        /**
+         * Runs the task on the thread that submitted it, which slows the producer down.
+         */
+        CALLER_RUNS,
+        /**
+         * Drops the new task.
+         */
+        DISCARD,
+        /**
+         * Drops the oldest waiting task and queues the new one.
+         */
+        DISCARD_OLDEST
+    }
+    /**
+     * Creates an executor with a fixed number of threads and a limited queue. Idle threads are stopped after a minute.
+     *
+     * @param name      the name prefix for the worker threads
+     * @param threads   the maximum number of worker threads
+     * @param queueSize the maximum number of tasks waiting for a thread
+     * @param policy    what to do with a task when the queue is full
+     * @return a new executor
+     * @throws IllegalArgumentException if threads or queueSize is less than 1
+     */
+    public static AsyncExecutor bounded(String name,int threads,int queueSize,final RejectionPolicy policy) throws IllegalArgumentException{
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Threads and queue size must be at least 1");
+        }
+        final AsyncExecutor[] holder = new AsyncExecutor[1];
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads,threads,60L,java.util.concurrent.TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),threads(name),new RejectedExecutionHandler() {
+
+            public void rejectedExecution(Runnable r,ThreadPoolExecutor executor){
+                holder[0].rejected(policy,r,executor);
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        holder[0] = new AsyncExecutor(pool,policy);
+        return holder[0];
+    }
+    /**
+     * Creates an executor backed by a work stealing fork-join pool. The queue is not limited.
+     *
+     * @param parallelism the target number of active threads
+     * @return a new executor
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public static AsyncExecutor forkJoin(int parallelism) throws IllegalArgumentException{
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        return new AsyncExecutor(new ForkJoinPool(parallelism),null);
+    }
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     *
+     * @param name the name of the executor, used in error messages
+     * @return a new executor
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     * @see #isVirtualSupported()
+     */
+    public static AsyncExecutor virtual(String name) throws UnsupportedOperationException{
+        try {
+            return new AsyncExecutor((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null),null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this runtime, can not create " + name,e);
+        }
+    }
+    /**
+     * Returns true if the runtime supports virtual threads.
+     *
+     * @return true if {@link #virtual(String)} can be used
+     */
+    public static boolean isVirtualSupported(){
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    /**
+     * Sets the executor used by every asynchronous task that is not given one explicitly.
+     *
+     * @param executor the executor to use, or null to go back to Bukkit's async scheduler
+     */
+    public static void setDefault(AsyncExecutor executor){
+        defaultExecutor = executor;
+    }
+    /**
+     * Gets the executor used by every asynchronous task that is not given one explicitly.
+     *
+     * @return the default executor, or null if Bukkit's async scheduler is used
+     */
+    public static AsyncExecutor getDefault(){
+        return defaultExecutor;
+    }
+    /**
+     * Runs the task asynchronously on the default executor, or Bukkit's async scheduler if there is none.
+     */
+    static void dispatch(Plugin plugin,Runnable task){
+        final AsyncExecutor executor = defaultExecutor;
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            TaskScheduler.getDefault().runTaskAsynchronously(plugin,task);
+        }
+    }
+    /**
+     * Queues the task to run on one of the executor's threads.
+     *
+     * @param task the task to run
+     * @throws RejectedExecutionException if the executor is shut down or the queue is full with the ABORT policy
+     */
+    @Override
+    public void execute(Runnable task) throws RejectedExecutionException{
+        submitted.incrementAndGet();
+        try {
+            service.execute(new Job(task));
+        } catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            throw e;
+        }
+    }
+    /**
+     * Gets what the executor does with a task when its queue is full.
+     *
+     * @return the rejection policy, or null if the queue is not limited
+     */
+    public RejectionPolicy getRejectionPolicy(){
+        return policy;
+    }
+    /**
+     * Gets the number of tasks waiting for a thread.
+     *
+     * @return the queue depth
+     */
+    public long getQueueDepth(){
+        return Math.max(0L,submitted.get() - started.get() - dropped.get());
+    }
+    /**
+     * Gets the number of tasks being run right now.
+     *
+     * @return the number of busy workers
+     */
+    public int getActiveCount(){
+        return active.get();
+    }
+    /**
+     * Gets the number of tasks that have finished running.
+     *
+     * @return the completed task count
+     */
+    public long getCompletedCount(){
+        return completed.get();
+    }
+    /**
+     * Gets the number of times a task was turned away because the queue was full or the executor shut down, whatever the policy then did with it.
+     *
+     * @return the rejected task count
+     */
+    public long getRejectedCount(){
+        return rejected.get();
+    }
+    /**
+     * Stops accepting new tasks, tasks already queued still run.
+     */
+    public void shutdown(){
+        service.shutdown();
+    }
+    /**
+     * Returns true if {@link #shutdown()} has been called.
+     *
+     * @return true if the executor no longer accepts tasks
+     */
+    public boolean isShutdown(){
+        return service.isShutdown();
+    }
+    /**
+     * Waits for queued tasks to finish after a shutdown.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of time the timeout value relates to
+     * @return true if every task finished, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout,TimeUnit unit) throws InterruptedException{
+        return service.awaitTermination(unit.toMillis(timeout),java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
+    private void rejected(RejectionPolicy policy,Runnable task,ThreadPoolExecutor executor){
+        rejected.incrementAndGet();
+        if (policy == RejectionPolicy.ABORT) {
+            throw new RejectedExecutionException(executor.isShutdown() ? "Executor has been shut down" : "Queue is full");
+        }
+        if (executor.isShutdown()) {
+            drop(task);
+            return;
+        }
+        switch (policy) {
+            case CALLER_RUNS:
+                task.run();
+                break;
+            case DISCARD_OLDEST:
+                final Runnable oldest = executor.getQueue().poll();
+                if (oldest != null) {
+                    drop(oldest);
+                }
+                executor.execute(task);
+                break;
+            default:
+                drop(task);
+                break;
+        }
+    }
+    /**
+     * Counts a task that will never run and tells it so if it asked to know.
+     */
+    private void drop(Runnable task){
+        dropped.incrementAndGet();
+        final Runnable work = task instanceof Job ? ((Job) task).task : task;
+        if (work instanceof Droppable) {
+            try {
+                ((Droppable) work).dropped();
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING,"Dropped async task " + TaskMetrics.label(work) + " generated an exception",t);
+            }
+        }
+    }
+    private static ThreadFactory threads(final String name){
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+
+            public Thread newThread(Runnable r){
+                final Thread thread = new Thread(r,name + "-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Work that wants to know when an executor drops it instead of running it.
+     */
+    interface Droppable {
+
+        /**
+         * Called on the submitting thread when the work will never run.
+         */
+        void dropped();
+    }
+
+    /**
+     * A task queued on the pool, keeps the counters and logs anything the task throws.
+     */
+    private final class Job implements Runnable {
+
+        final Runnable task;
+
+        Job(Runnable task){
+            this.task = task;
+        }
+        @Override
+        public void run(){
+            started.incrementAndGet();
+            active.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING,"Async task " + TaskMetrics.label(task) + " generated an exception",t);
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        }
+    }
+}
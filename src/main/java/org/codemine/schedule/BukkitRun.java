@@ -1,9 +1,12 @@
 package org.codemine.schedule;
 
-import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.logging.Level;
+
 /**
  * A <tt>BukkitRun</tt> is the same as a BukkitRunnable with 4 extra overloaded methods.
  * <p>This Class is a direct copy code by the Bukkit Dev Team, I can't claim any credit at all. My overloaded methods, require about
@@ -18,6 +21,10 @@ import org.bukkit.scheduler.BukkitTask;
  *     <li>{@link org.codemine.schedule.BukkitRun#runTaskTimer(org.bukkit.plugin.Plugin, long, long, TimeUnit)}</li>
  *     <li>{@link org.codemine.schedule.BukkitRun#runTaskTimerAsynchronously(org.bukkit.plugin.Plugin, long, long, TimeUnit)}</li>
  * </ol>
+ * <p>Each of the {@link org.codemine.schedule.TimeUnit} overloads can also target a {@link org.codemine.schedule.TimingWheel} instead of
+ * the Bukkit scheduler, in which case the task is dispatched by the wheel's single repeating task.</p>
+ * <p>Asynchronous runs go to the {@link org.codemine.schedule.AsyncExecutor} passed to the overloads that take one, otherwise to the
+ * default set with {@link org.codemine.schedule.AsyncExecutor#setDefault(AsyncExecutor)}, and only when neither is set to Bukkit's async scheduler.</p>
  * <hr>
  * Am example usage can be seen below. This sets the task to be delayed by 1 minute.
  * <tt>
@@ -49,14 +56,65 @@ import org.bukkit.scheduler.BukkitTask;
  */
 public abstract class BukkitRun implements Runnable {
 
-    private int taskId = -1;
+    private static final int UNSCHEDULED = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+    private static final int CANCELLED = 3;
+    private static final int DONE = 4;
+    private static final AtomicIntegerFieldUpdater<BukkitRun> STATE = AtomicIntegerFieldUpdater.newUpdater(BukkitRun.class,"state");
+
+    private volatile int state = UNSCHEDULED;
+    private volatile int taskId = -1;
+    // Set once this has been claimed for scheduling, until then or after a failed attempt there is no id to wait for.
+    private volatile boolean claimed;
+    private volatile BukkitTask task;
+    private volatile Object[] tags;
+    private volatile LoadShedder shedder;
+    private volatile LoadShedder.Priority priority;
+    /**
+     * Attempts to cancel this task. Calling this more than once, or after a one shot task has completed has no effect.
+     * A task cancelled before it is scheduled can no longer be scheduled.
+     */
+    public void cancel(){
+        for (; ; ) {
+            final int current = state;
+            if (current == CANCELLED || current == DONE) {
+                return;
+            }
+            if (STATE.compareAndSet(this,current,CANCELLED)) {
+                break;
+            }
+        }
+        untag();
+        final BukkitTask scheduled = task;
+        if (scheduled != null) {
+            scheduled.cancel();
+        }
+    }
     /**
-     * Attempts to cancel this task.
+     * Returns true if this task has been cancelled.
      *
-     * @throws IllegalStateException if task was not scheduled yet
+     * @return true if {@link #cancel()} has been called
      */
-    public synchronized void cancel() throws IllegalStateException{
-        Bukkit.getScheduler().cancelTask(getTaskId());
+    public boolean isCancelled(){
+        return state == CANCELLED;
+    }
+    /**
+     * Returns true if this task is currently running.
+     *
+     * @return true if {@link #run()} is in progress
+     */
+    public boolean isRunning(){
+        return state == RUNNING;
+    }
+    /**
+     * Returns true if this task has finished running, a one shot task is done after its run and a repeating task only
+     * if it finished itself from within its run.
+     *
+     * @return true if the task has completed
+     */
+    public boolean isDone(){
+        return state == DONE;
     }
     /**
      * Schedules this in the Bukkit scheduler to run on next tick.
@@ -67,9 +125,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalStateException    if this was already scheduled
      * @see org.bukkit.scheduler.BukkitScheduler#runTask(org.bukkit.plugin.Plugin,Runnable)
      */
-    public synchronized BukkitTask runTask(Plugin plugin) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTask(plugin,this));
+    public BukkitTask runTask(Plugin plugin) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(true,false);
+        try {
+            return setupId(TaskScheduler.getDefault().runTask(plugin,dispatch));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
@@ -82,9 +144,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalStateException    if this was already scheduled
      * @see org.bukkit.scheduler.BukkitScheduler#runTaskAsynchronously(Plugin,Runnable)
      */
-    public synchronized BukkitTask runTaskAsynchronously(Plugin plugin) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskAsynchronously(plugin,this));
+    public BukkitTask runTaskAsynchronously(Plugin plugin) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            return setupId(async(plugin,AsyncExecutor.getDefault(),dispatch,-1L,0L));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * Schedules this to run after the specified number of server ticks.
@@ -96,9 +162,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalStateException    if this was already scheduled
      * @see org.bukkit.scheduler.BukkitScheduler#runTaskLater(Plugin,Runnable,long)
      */
-    public synchronized BukkitTask runTaskLater(Plugin plugin,long delay) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskLater(plugin,this,delay));
+    public BukkitTask runTaskLater(Plugin plugin,long delay) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(true,false);
+        try {
+            return setupId(TaskScheduler.getDefault().runTaskLater(plugin,dispatch,delay));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * Schedules this to run after the specified delay value and the {@link org.codemine.schedule.TimeUnit} .
@@ -110,9 +180,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalArgumentException if plugin is null
      * @throws IllegalStateException    if this was already scheduled
      */
-    public synchronized BukkitTask runTaskLater(Plugin plugin,long delay,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskLater(plugin,this,unit.toTicks(delay)));
+    public BukkitTask runTaskLater(Plugin plugin,long delay,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(true,false);
+        try {
+            return setupId(TaskScheduler.getDefault().runTaskLater(plugin,dispatch,unit.toTicks(delay)));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
@@ -126,9 +200,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalStateException    if this was already scheduled
      * @see org.bukkit.scheduler.BukkitScheduler#runTaskLaterAsynchronously(Plugin,Runnable,long)
      */
-    public synchronized BukkitTask runTaskLaterAsynchronously(Plugin plugin,long delay) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskLaterAsynchronously(plugin,this,delay));
+    public BukkitTask runTaskLaterAsynchronously(Plugin plugin,long delay) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            return setupId(async(plugin,AsyncExecutor.getDefault(),dispatch,delay,0L));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
@@ -142,9 +220,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalArgumentException if plugin is null
      * @throws IllegalStateException    if this was already scheduled
      */
-    public synchronized BukkitTask runTaskLaterAsynchronously(Plugin plugin,long delay,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskLaterAsynchronously(plugin,this,unit.convert(delay,TimeUnit.TICKS)));
+    public BukkitTask runTaskLaterAsynchronously(Plugin plugin,long delay,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            return setupId(async(plugin,AsyncExecutor.getDefault(),dispatch,unit.toTicks(delay),0L));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * Schedules this to repeatedly run until cancelled, starting after the specified number of server ticks.
@@ -157,9 +239,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalStateException    if this was already scheduled
      * @see org.bukkit.scheduler.BukkitScheduler#runTaskTimer(Plugin,Runnable,long,long)
      */
-    public synchronized BukkitTask runTaskTimer(Plugin plugin,long delay,long period) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskTimer(plugin,this,delay,period));
+    public BukkitTask runTaskTimer(Plugin plugin,long delay,long period) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(true,true);
+        try {
+            return setupId(TaskScheduler.getDefault().runTaskTimer(plugin,dispatch,delay,period));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * Schedules this to repeatedly run until cancelled, starting after the specified delay value and period value and the {@link org.codemine.schedule.TimeUnit} .
@@ -172,9 +258,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalArgumentException if plugin is null
      * @throws IllegalStateException    if this was already scheduled
      */
-    public synchronized BukkitTask runTaskTimer(Plugin plugin,long delay,long period,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskTimer(plugin,this,unit.toTicks(delay),unit.toTicks(period)));
+    public BukkitTask runTaskTimer(Plugin plugin,long delay,long period,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(true,true);
+        try {
+            return setupId(TaskScheduler.getDefault().runTaskTimer(plugin,dispatch,unit.toTicks(delay),unit.toTicks(period)));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
@@ -189,9 +279,13 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalStateException    if this was already scheduled
      * @see org.bukkit.scheduler.BukkitScheduler#runTaskTimerAsynchronously(Plugin,Runnable,long,long)
      */
-    public synchronized BukkitTask runTaskTimerAsynchronously(Plugin plugin,long delay,long period) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,this,delay,period));
+    public BukkitTask runTaskTimerAsynchronously(Plugin plugin,long delay,long period) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,true);
+        try {
+            return setupId(async(plugin,AsyncExecutor.getDefault(),dispatch,delay,period));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
     }
     /**
      * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
@@ -206,9 +300,293 @@ public abstract class BukkitRun implements Runnable {
      * @throws IllegalArgumentException if plugin is null
      * @throws IllegalStateException    if this was already scheduled
      */
-    public synchronized BukkitTask runTaskTimerAsynchronously(Plugin plugin,long delay,long period,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
-        checkState();
-        return setupId(Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,this,unit.toTicks(delay),unit.toTicks(period)));
+    public BukkitTask runTaskTimerAsynchronously(Plugin plugin,long delay,long period,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,true);
+        try {
+            return setupId(async(plugin,AsyncExecutor.getDefault(),dispatch,unit.toTicks(delay),unit.toTicks(period)));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * Schedules this to run after the packed {@link org.codemine.schedule.Duration}.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param delay  the packed duration to wait before running the task
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null or delay is not a packed duration
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitTask runTaskLaterPacked(Plugin plugin,long delay) throws IllegalArgumentException, IllegalStateException{
+        return runTaskLater(plugin,Duration.toTicks(delay));
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this to run asynchronously after the packed {@link org.codemine.schedule.Duration}.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param delay  the packed duration to wait before running the task
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null or delay is not a packed duration
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitTask runTaskLaterAsynchronouslyPacked(Plugin plugin,long delay) throws IllegalArgumentException, IllegalStateException{
+        return runTaskLaterAsynchronously(plugin,Duration.toTicks(delay));
+    }
+    /**
+     * Schedules this to repeatedly run until cancelled, starting after the packed {@link org.codemine.schedule.Duration} delay.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param delay  the packed duration to wait before running the task
+     * @param period the packed duration to wait between runs
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null or delay or period is not a packed duration
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitTask runTaskTimerPacked(Plugin plugin,long delay,long period) throws IllegalArgumentException, IllegalStateException{
+        return runTaskTimer(plugin,Duration.toTicks(delay),Duration.toTicks(period));
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this to repeatedly run asynchronously until cancelled, starting after the packed {@link org.codemine.schedule.Duration} delay.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param delay  the packed duration to wait before running the task
+     * @param period the packed duration to wait between runs
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null or delay or period is not a packed duration
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitTask runTaskTimerAsynchronouslyPacked(Plugin plugin,long delay,long period) throws IllegalArgumentException, IllegalStateException{
+        return runTaskTimerAsynchronously(plugin,Duration.toTicks(delay),Duration.toTicks(period));
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this to run on the {@link org.codemine.schedule.AsyncExecutor}.
+     *
+     * @param plugin   the reference to the plugin scheduling task
+     * @param executor the executor to run the task on
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null
+     * @throws IllegalStateException    if this was already scheduled
+     * @throws java.util.concurrent.RejectedExecutionException if the executor refused the task
+     */
+    public BukkitTask runTaskAsynchronously(Plugin plugin,AsyncExecutor executor) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            return setupId(async(plugin,executor,dispatch,-1L,0L));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this to run on the {@link org.codemine.schedule.KeyedExecutor} after every task already queued for the key.
+     *
+     * @param plugin   the reference to the plugin scheduling task
+     * @param executor the executor to run the task on
+     * @param key      the key to order the task by
+     * @param <K>      the type of the keys
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin, executor or key is null
+     * @throws IllegalStateException    if this was already scheduled
+     * @throws java.util.concurrent.RejectedExecutionException if the executor refused the task
+     */
+    public <K> BukkitTask runTaskAsynchronously(Plugin plugin,KeyedExecutor<K> executor,K key) throws IllegalArgumentException, IllegalStateException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            final BukkitTask task = publish(new ExecutorTask(TaskIds.next(),plugin,this,null));
+            executor.execute(key,dispatch);
+            return setupId(task);
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this to run on the {@link org.codemine.schedule.AsyncExecutor} after the specified delay value and the {@link org.codemine.schedule.TimeUnit} .
+     *
+     * @param plugin   the reference to the plugin scheduling task
+     * @param executor the executor to run the task on
+     * @param delay    the delay value to wait before running the task
+     * @param unit     the unit of time the delay value relates to
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitTask runTaskLaterAsynchronously(Plugin plugin,AsyncExecutor executor,long delay,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            return setupId(async(plugin,executor,dispatch,unit.toTicks(delay),0L));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this to repeatedly run on the {@link org.codemine.schedule.AsyncExecutor} until cancelled, starting after the specified delay value and period value and the {@link org.codemine.schedule.TimeUnit} .
+     * A run is skipped if the previous one is still waiting for a thread or in progress.
+     *
+     * @param plugin   the reference to the plugin scheduling task
+     * @param executor the executor to run the task on
+     * @param delay    the delay value to wait before running the task
+     * @param period   the period to wait between runs
+     * @param unit     the unit of time the delay value relates to
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalArgumentException if plugin is null
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitTask runTaskTimerAsynchronously(Plugin plugin,AsyncExecutor executor,long delay,long period,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        final Dispatch dispatch = checkState(false,true);
+        try {
+            return setupId(async(plugin,executor,dispatch,unit.toTicks(delay),Math.max(1L,unit.toTicks(period))));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * Schedules this on the {@link org.codemine.schedule.TimingWheel} to run after the specified delay value and the {@link org.codemine.schedule.TimeUnit} .
+     *
+     * @param wheel the wheel to schedule the task on
+     * @param delay the delay value to wait before running the task
+     * @param unit  the unit of time the delay value relates to
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalStateException if this was already scheduled
+     */
+    public BukkitTask runTaskLater(TimingWheel wheel,long delay,TimeUnit unit) throws IllegalStateException{
+        final Dispatch dispatch = checkState(true,false);
+        try {
+            return setupId(wheel.runTaskLater(dispatch,delay,unit));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this on the {@link org.codemine.schedule.TimingWheel} to run asynchronously after the specified delay value and the {@link org.codemine.schedule.TimeUnit} .
+     *
+     * @param wheel the wheel to schedule the task on
+     * @param delay the delay value to wait before running the task
+     * @param unit  the unit of time the delay value relates to
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalStateException if this was already scheduled
+     */
+    public BukkitTask runTaskLaterAsynchronously(TimingWheel wheel,long delay,TimeUnit unit) throws IllegalStateException{
+        final Dispatch dispatch = checkState(false,false);
+        try {
+            return setupId(wheel.runTaskLaterAsynchronously(dispatch,delay,unit));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * Schedules this on the {@link org.codemine.schedule.TimingWheel} to repeatedly run until cancelled, starting after the specified delay value and period value and the {@link org.codemine.schedule.TimeUnit} .
+     *
+     * @param wheel  the wheel to schedule the task on
+     * @param delay  the delay value to wait before running the task
+     * @param period the period to wait between runs
+     * @param unit   the unit of time the delay value relates to
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalStateException if this was already scheduled
+     */
+    public BukkitTask runTaskTimer(TimingWheel wheel,long delay,long period,TimeUnit unit) throws IllegalStateException{
+        final Dispatch dispatch = checkState(true,true);
+        try {
+            return setupId(wheel.runTaskTimer(dispatch,delay,period,unit));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules this on the {@link org.codemine.schedule.TimingWheel} to repeatedly run asynchronously until cancelled, starting after the specified delay value and period value and the {@link org.codemine.schedule.TimeUnit} .
+     *
+     * @param wheel  the wheel to schedule the task on
+     * @param delay  the delay value to wait before running the task
+     * @param period the period to wait between runs
+     * @param unit   the unit of time the delay value relates to
+     * @return a BukkitTask that contains the id number
+     * @throws IllegalStateException if this was already scheduled
+     */
+    public BukkitTask runTaskTimerAsynchronously(TimingWheel wheel,long delay,long period,TimeUnit unit) throws IllegalStateException{
+        final Dispatch dispatch = checkState(false,true);
+        try {
+            return setupId(wheel.runTaskTimerAsynchronously(dispatch,delay,period,unit));
+        } catch (RuntimeException e) {
+            throw rollback(e);
+        }
+    }
+    /**
+     * Gets the label this task is recorded under by {@link org.codemine.schedule.TaskMetrics}. Override to group tasks
+     * differently, the returned value should be a constant as it is looked up whenever the task is scheduled.
+     *
+     * @return the label for this task, by default the name of its class
+     */
+    public String getLabel(){
+        return getClass().getName();
+    }
+    /**
+     * Tags this task so it can be counted and cancelled with every other task carrying the same tag, see {@link org.codemine.schedule.TaskTags}.
+     * A task can carry more than one tag and leaves them all once it is done or cancelled.
+     *
+     * @param tag the owner to group this task under, such as an arena or a world
+     * @return this task, so it can be scheduled straight away
+     * @throws IllegalArgumentException if tag is null
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitRun tag(Object tag) throws IllegalArgumentException, IllegalStateException{
+        if (tag == null) {
+            throw new IllegalArgumentException("Tag cannot be null");
+        }
+        if (state != UNSCHEDULED) {
+            throw new IllegalStateException("Tags must be set before scheduling");
+        }
+        final Object[] current = tags;
+        final Object[] added;
+        if (current == null) {
+            added = new Object[]{tag};
+        } else {
+            added = new Object[current.length + 1];
+            System.arraycopy(current,0,added,0,current.length);
+            added[current.length] = tag;
+        }
+        tags = added;
+        return this;
+    }
+    /**
+     * Sets how important this task is so the shedder can stretch or skip its runs while the server is behind, see
+     * {@link org.codemine.schedule.LoadShedder}. Only repeating tasks are shed.
+     *
+     * @param shedder  the shedder that decides when runs are held back
+     * @param priority the priority of this task
+     * @return this task, so it can be scheduled straight away
+     * @throws IllegalArgumentException if shedder or priority is null
+     * @throws IllegalStateException    if this was already scheduled
+     */
+    public BukkitRun priority(LoadShedder shedder,LoadShedder.Priority priority) throws IllegalArgumentException, IllegalStateException{
+        if (shedder == null || priority == null) {
+            throw new IllegalArgumentException("Shedder and priority cannot be null");
+        }
+        if (state != UNSCHEDULED) {
+            throw new IllegalStateException("Priority must be set before scheduling");
+        }
+        this.shedder = shedder;
+        this.priority = priority;
+        return this;
     }
     /**
      * Gets the task id for this runnable.
@@ -216,20 +594,237 @@ public abstract class BukkitRun implements Runnable {
      * @return the task id that this runnable was scheduled as
      * @throws IllegalStateException if task was not scheduled yet
      */
-    public synchronized int getTaskId() throws IllegalStateException{
-        final int id = taskId;
+    public int getTaskId() throws IllegalStateException{
+        int id = taskId;
+        // A run can start on another thread before the scheduler has handed back the id, it is published moments later.
+        while (id == -1 && claimed) {
+            Thread.yield();
+            id = taskId;
+        }
         if (id == -1) {
             throw new IllegalStateException("Not scheduled yet");
         }
         return id;
     }
-    private void checkState(){
-        if (taskId != -1) {
+    /**
+     * Gets the plugin that scheduled this, or null if it has not been scheduled.
+     */
+    Plugin getOwner(){
+        final BukkitTask current = task;
+        return current == null ? null : current.getOwner();
+    }
+    /**
+     * Claims this task for scheduling, only one caller can ever succeed.
+     */
+    private Dispatch checkState(boolean sync,boolean periodic){
+        if (!STATE.compareAndSet(this,UNSCHEDULED,SCHEDULED)) {
+            if (state == CANCELLED && taskId == -1) {
+                throw new IllegalStateException("Cancelled before it was scheduled");
+            }
             throw new IllegalStateException("Already scheduled as " + taskId);
         }
+        claimed = true;
+        return new Dispatch(this,sync,periodic);
+    }
+    /**
+     * Releases the claim taken by {@link #checkState(boolean,boolean)} when the scheduler refused the task.
+     */
+    private RuntimeException rollback(RuntimeException e){
+        claimed = false;
+        task = null;
+        taskId = -1;
+        STATE.compareAndSet(this,SCHEDULED,UNSCHEDULED);
+        return e;
+    }
+    /**
+     * Hands the task to the executor, or to Bukkit's async scheduler if there is none. A one shot task with a negative delay runs
+     * straight away, otherwise an asynchronous Bukkit task does the timing and submits each run to the executor, a negative delay
+     * counting as 0.
+     */
+    private BukkitTask async(final Plugin plugin,final AsyncExecutor executor,final Dispatch dispatch,long delay,long period){
+        final boolean immediate = delay < 0L && period <= 0L;
+        delay = Math.max(0L,delay);
+        if (executor == null) {
+            if (immediate) {
+                return TaskScheduler.getDefault().runTaskAsynchronously(plugin,dispatch);
+            }
+            return period > 0L ? TaskScheduler.getDefault().runTaskTimerAsynchronously(plugin,dispatch,delay,period) : TaskScheduler.getDefault().runTaskLaterAsynchronously(plugin,dispatch,delay);
+        }
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (immediate) {
+            // The id is known before the hand-off, an executor running the task on this thread would otherwise never see it.
+            final ExecutorTask task = publish(new ExecutorTask(TaskIds.next(),plugin,this,null));
+            executor.execute(dispatch);
+            return task;
+        }
+        final Runnable handoff = new Runnable() {
+
+            public void run(){
+                // Only one run is ever queued or running, a trigger that fires before it is done is skipped.
+                if (!dispatch.claim()) {
+                    return;
+                }
+                try {
+                    executor.execute(dispatch);
+                } catch (RejectedExecutionException e) {
+                    dispatch.release();
+                    plugin.getLogger().log(Level.WARNING,"Async task " + getLabel() + " for " + plugin.getName() + " was rejected",e);
+                }
+            }
+        };
+        // The trigger is asynchronous too, so an executor that runs rejected work on the caller never runs it on the main thread.
+        final BukkitTask trigger = period > 0L ? TaskScheduler.getDefault().runTaskTimerAsynchronously(plugin,handoff,delay,period) : TaskScheduler.getDefault().runTaskLaterAsynchronously(plugin,handoff,delay);
+        return new ExecutorTask(trigger.getTaskId(),plugin,this,trigger);
+    }
+    /**
+     * Makes the id known ahead of {@link #setupId(BukkitTask)} when this is handed straight to an executor.
+     */
+    private ExecutorTask publish(ExecutorTask task){
+        this.task = task;
+        this.taskId = task.getTaskId();
+        return task;
     }
     private BukkitTask setupId(final BukkitTask task){
+        this.task = task;
         this.taskId = task.getTaskId();
+        final Object[] owners = tags;
+        if (owners != null) {
+            for (Object tag : owners) {
+                TaskTags.add(tag,taskId,this);
+            }
+        }
+        final int current = state;
+        if (current == CANCELLED) {
+            task.cancel();
+        }
+        if (current == CANCELLED || current == DONE) {
+            untag();
+        }
         return task;
     }
+    /**
+     * Removes this from its tags once it is done or cancelled. A one shot task can finish before its id is known, in which case
+     * {@link #setupId(BukkitTask)} sees the final state and removes it after adding it.
+     */
+    private void untag(){
+        final Object[] owners = tags;
+        final int id = taskId;
+        if (owners == null || id == -1) {
+            return;
+        }
+        for (Object tag : owners) {
+            TaskTags.remove(tag,id,this);
+        }
+    }
+    /**
+     * Moves the task to running, returns false if it was cancelled and should not run.
+     */
+    private boolean begin(){
+        return STATE.compareAndSet(this,SCHEDULED,RUNNING);
+    }
+    private void end(boolean periodic){
+        if (STATE.compareAndSet(this,RUNNING,periodic ? SCHEDULED : DONE) && !periodic) {
+            untag();
+        }
+    }
+    /**
+     * Ends a repeating task from inside its own run, it is left done rather than cancelled.
+     */
+    void finish(){
+        if (STATE.compareAndSet(this,RUNNING,DONE)) {
+            untag();
+            final BukkitTask scheduled = task;
+            if (scheduled != null) {
+                scheduled.cancel();
+            }
+        }
+    }
+
+    /**
+     * The runnable actually handed to the scheduler, it moves the task through its states around each run and records
+     * the run with {@link org.codemine.schedule.TaskMetrics} if metrics were enabled when the task was scheduled.
+     * A repeating task with a priority first asks its {@link org.codemine.schedule.LoadShedder} whether the run is held back.
+     * When an {@link org.codemine.schedule.AsyncExecutor} drops it a one shot task is cancelled and a repeating task waits for its next run.
+     */
+    static final class Dispatch implements Runnable, AsyncExecutor.Droppable {
+
+        private static final AtomicIntegerFieldUpdater<Dispatch> QUEUED = AtomicIntegerFieldUpdater.newUpdater(Dispatch.class,"queued");
+
+        final BukkitRun run;
+        private final boolean sync;
+        private final boolean periodic;
+        private final TaskStats stats;
+        private final LoadShedder shedder;
+        private final LoadShedder.Priority priority;
+        private int held;
+        // Set while a run handed to an executor is waiting or running.
+        private volatile int queued;
+
+        Dispatch(BukkitRun run,boolean sync,boolean periodic){
+            this.run = run;
+            this.sync = sync;
+            this.periodic = periodic;
+            this.stats = TaskMetrics.isEnabled() ? TaskMetrics.stats(run.getLabel()) : null;
+            this.shedder = periodic ? run.shedder : null;
+            this.priority = run.priority;
+        }
+        @Override
+        public void run(){
+            try {
+                execute();
+            } finally {
+                if (queued != 0) {
+                    release();
+                }
+            }
+        }
+        @Override
+        public void dropped(){
+            if (periodic) {
+                release();
+            } else {
+                run.cancel();
+            }
+        }
+        /**
+         * Marks a run as handed to an executor, returns false if the previous one has not finished yet.
+         */
+        boolean claim(){
+            return QUEUED.compareAndSet(this,0,1);
+        }
+        void release(){
+            queued = 0;
+        }
+        private void execute(){
+            if (!run.begin()) {
+                return;
+            }
+            if (shedder != null) {
+                if (shedder.shed(priority,held)) {
+                    held++;
+                    run.end(true);
+                    return;
+                }
+                held = 0;
+            }
+            final Watchdog watchdog = sync ? Watchdog.active : null;
+            if (watchdog != null) {
+                watchdog.enter(this,null);
+            }
+            final long start = stats == null ? 0L : System.nanoTime();
+            try {
+                run.run();
+            } finally {
+                if (stats != null) {
+                    stats.record(System.nanoTime() - start,sync);
+                }
+                if (watchdog != null) {
+                    watchdog.exit();
+                }
+                run.end(periodic);
+            }
+        }
+    }
 }
@@ -0,0 +1,326 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A <tt>BulkPipeline</tt> runs the snapshot, compute, apply pattern over a large collection in three steps:
+ * <ol>
+ *     <li>{@link #start(java.util.Collection)} copies the collection on the main thread, so the compute step never touches live server state.</li>
+ *     <li>The map {@link org.codemine.schedule.Stage} runs over the snapshot in parallel on a {@link java.util.concurrent.ForkJoinPool}, the
+ *     snapshot is split until each piece holds at most {@link #granularity(int)} elements. With a {@link Reducer} the results are combined
+ *     into one value, otherwise a null result drops the element.</li>
+ *     <li>The apply {@link org.codemine.schedule.Stage} runs on the main thread for each result, using at most {@link #budget(long,TimeUnit)}
+ *     of each tick and carrying the rest over to the following ticks.</li>
+ * </ol>
+ * <p>The pipeline is itself a {@link org.codemine.schedule.BukkitRun}, {@link #cancel()} stops it at whichever step it has reached. Pieces
+ * already being computed stop at the next element and no further results are applied. {@link #getFuture()} completes with the number of
+ * results applied once the last one has been.</p>
+ * <hr>
+ * An example usage can be seen below. Paths are computed for every online player in parallel and applied 5 milliseconds per tick.
+ * <tt>
+ * <pre>
+ * {@code
+ * new BulkPipeline<Player,Path>(this,new Stage<Player,Path>() {
+ *     public Path apply(Player player) {
+ *         return finder.find(snapshots.get(player));
+ *     }
+ * },new Stage<Path,Void>() {
+ *     public Void apply(Path path) {
+ *         path.show();
+ *         return null;
+ *     }
+ * }).granularity(16).budget(5l,TimeUnit.MILLISECONDS).start(Bukkit.getOnlinePlayers());
+ * }
+ * </pre></tt>
+ *
+ * @param <S> the type of element in the snapshot
+ * @param <R> the type of result computed for each element
+ * @version 1.0-SNAPSHOT
+ */
+public class BulkPipeline<S, R> extends BukkitRun {
+
+    private static final Object LOCK = new Object();
+    private static ForkJoinPool sharedPool;
+
+    private final Plugin plugin;
+    private final Stage<? super S,? extends R> map;
+    private final Stage<? super R,?> apply;
+    private final TaskFuture<Integer> future;
+    private Reducer<R> reducer;
+    private ForkJoinPool pool;
+    private int granularity = 64;
+    private long budgetNanos = 5000000L;
+    private Object[] input;
+    private Object[] results;
+    private volatile Throwable error;
+    private int cursor;
+    private int applied;
+
+    /**
+     * Creates a pipeline that maps each element and applies each result.
+     *
+     * @param plugin the reference to the plugin that owns the pipeline
+     * @param map    the stage run in parallel for every element of the snapshot
+     * @param apply  the stage run on the main thread for every result
+     * @throws IllegalArgumentException if any argument is null
+     */
+    public BulkPipeline(Plugin plugin,Stage<? super S,? extends R> map,Stage<? super R,?> apply) throws IllegalArgumentException{
+        if (plugin == null || map == null || apply == null) {
+            throw new IllegalArgumentException("Plugin, map and apply cannot be null");
+        }
+        this.plugin = plugin;
+        this.map = map;
+        this.apply = apply;
+        this.future = new TaskFuture<>(plugin);
+    }
+    /**
+     * Sets the largest number of elements a single fork-join task maps, smaller values split the work more finely.
+     *
+     * @param elements the number of elements per task
+     * @return this pipeline
+     * @throws IllegalArgumentException if elements is less than 1
+     */
+    public BulkPipeline<S,R> granularity(int elements) throws IllegalArgumentException{
+        if (elements < 1) {
+            throw new IllegalArgumentException("Granularity must be at least 1");
+        }
+        this.granularity = elements;
+        return this;
+    }
+    /**
+     * Sets how much of each tick the apply step may use.
+     *
+     * @param budget the amount of time per tick
+     * @param unit   the unit of time the budget value relates to
+     * @return this pipeline
+     * @throws IllegalArgumentException if the budget is less than 1 millisecond
+     */
+    public BulkPipeline<S,R> budget(long budget,TimeUnit unit) throws IllegalArgumentException{
+        final long millis = unit.toMillis(budget);
+        if (millis < 1L) {
+            throw new IllegalArgumentException("Budget must be at least 1 millisecond");
+        }
+        this.budgetNanos = millis * 1000000L;
+        return this;
+    }
+    /**
+     * Combines the mapped results into a single value, which is applied once.
+     *
+     * @param reducer the function combining two results, it must be associative
+     * @return this pipeline
+     */
+    public BulkPipeline<S,R> reduce(Reducer<R> reducer){
+        this.reducer = reducer;
+        return this;
+    }
+    /**
+     * Sets the pool the map step runs on, by default a pool shared by every pipeline with one thread per core.
+     *
+     * @param pool the pool to use
+     * @return this pipeline
+     */
+    public BulkPipeline<S,R> pool(ForkJoinPool pool){
+        this.pool = pool;
+        return this;
+    }
+    /**
+     * Gets the future completed with the number of results applied, or failed if a stage threw.
+     *
+     * @return the completion of this pipeline
+     */
+    public TaskFuture<Integer> getFuture(){
+        return future;
+    }
+    /**
+     * Takes the snapshot and starts the map step. Must be called on the main thread.
+     *
+     * @param elements the collection to snapshot
+     * @return the completion of this pipeline
+     * @throws IllegalStateException if the pipeline was already started or cancelled
+     */
+    public TaskFuture<Integer> start(Collection<? extends S> elements) throws IllegalStateException{
+        if (input != null || isCancelled()) {
+            throw new IllegalStateException("Already started or cancelled");
+        }
+        input = elements.toArray();
+        results = new Object[reducer == null ? input.length : 1];
+        final ForkJoinPool target = pool != null ? pool : sharedPool();
+        target.execute(new MapStep());
+        return future;
+    }
+    /**
+     * Cancels the pipeline at whichever step it has reached.
+     */
+    @Override
+    public void cancel(){
+        super.cancel();
+        future.cancel(false);
+    }
+    private void startApply(){
+        if (error != null) {
+            future.fail(error);
+        } else if (isCancelled()) {
+            future.cancel(false);
+        } else {
+            runTaskTimer(plugin,0L,1L);
+        }
+    }
+    /**
+     * Applies results until the budget for this tick is used up.
+     */
+    @Override
+    public void run(){
+        final long end = System.nanoTime() + budgetNanos;
+        while (cursor < results.length) {
+            if (isCancelled()) {
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            final R result = (R) results[cursor];
+            results[cursor++] = null;
+            if (result == null) {
+                continue;
+            }
+            try {
+                apply.apply(result);
+                applied++;
+            } catch (Throwable t) {
+                future.fail(t);
+                finish();
+                return;
+            }
+            if (System.nanoTime() - end >= 0L) {
+                return;
+            }
+        }
+        future.complete(applied);
+        finish();
+    }
+    @SuppressWarnings("unchecked")
+    private R map(int index){
+        try {
+            return map.apply((S) input[index]);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StageException(e);
+        }
+    }
+    private static ForkJoinPool sharedPool(){
+        synchronized (LOCK) {
+            if (sharedPool == null) {
+                sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            }
+            return sharedPool;
+        }
+    }
+
+    /**
+     * A <tt>Reducer</tt> combines two mapped results into one.
+     *
+     * @param <R> the type of result
+     */
+    public interface Reducer<R> {
+
+        /**
+         * Combines two results, either of which may be null if its element was dropped.
+         *
+         * @param a the first result
+         * @param b the second result
+         * @return the combined result
+         */
+        R combine(R a,R b);
+    }
+
+    /**
+     * Runs the map step over the whole snapshot on the pool, then hands over to the main thread to apply the results.
+     */
+    private final class MapStep extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute(){
+            try {
+                if (reducer == null) {
+                    new Split(0,input.length).invoke();
+                } else if (input.length > 0) {
+                    results[0] = new Reduce(0,input.length).invoke();
+                }
+            } catch (StageException e) {
+                error = e.getCause();
+            } catch (Throwable t) {
+                error = t;
+            }
+            SyncDrain.of(plugin).post(new Runnable() {
+
+                public void run(){
+                    startApply();
+                }
+            });
+        }
+    }
+
+    private final class Split extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        Split(int from,int to){
+            this.from = from;
+            this.to = to;
+        }
+        @Override
+        protected void compute(){
+            if (to - from <= granularity) {
+                for (int i = from; i < to && !isCancelled(); i++) {
+                    results[i] = map(i);
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new Split(from,mid),new Split(mid,to));
+        }
+    }
+
+    private final class Reduce extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        Reduce(int from,int to){
+            this.from = from;
+            this.to = to;
+        }
+        @Override
+        protected R compute(){
+            if (to - from <= granularity) {
+                R value = null;
+                for (int i = from; i < to && !isCancelled(); i++) {
+                    value = i == from ? map(i) : reducer.combine(value,map(i));
+                }
+                return value;
+            }
+            final int mid = (from + to) >>> 1;
+            final Reduce right = new Reduce(mid,to);
+            right.fork();
+            final R left = new Reduce(from,mid).compute();
+            return reducer.combine(left,right.join());
+        }
+    }
+
+    private static final class StageException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+        StageException(Exception cause){
+            super(cause);
+        }
+    }
+}
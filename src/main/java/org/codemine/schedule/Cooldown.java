@@ -0,0 +1,165 @@
+package org.codemine.schedule;
+
+import java.util.UUID;
+
+/**
+ * A <tt>Cooldown</tt> allows one use per key every fixed number of ticks. Created by {@link org.codemine.schedule.CooldownRegistry#cooldown(String,long,TimeUnit)}.
+ * <p>Keys are player UUIDs or entity ids. Entity ids are stored with a most significant half of 0, which no randomly generated or
+ * name based UUID has, so the two never collide. Every method may be called from any thread.</p>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class Cooldown {
+
+    private final CooldownRegistry registry;
+    private final String name;
+    private final long ticks;
+    private final TickStore store = new TickStore();
+
+    Cooldown(CooldownRegistry registry,String name,long ticks){
+        this.registry = registry;
+        this.name = name;
+        this.ticks = ticks;
+    }
+    /**
+     * Gets the name the cooldown was registered with.
+     *
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+    /**
+     * Gets the length of the cooldown.
+     *
+     * @param unit the unit of time to return
+     * @return the length
+     */
+    public long getDuration(TimeUnit unit){
+        return unit.convert(ticks,TimeUnit.TICKS);
+    }
+    /**
+     * Uses the cooldown if it is ready, starting it again.
+     *
+     * @param id the player's UUID
+     * @return true if it was ready and has now started, false if it is still cooling down
+     * @throws IllegalStateException if the registry is not running
+     */
+    public boolean tryUse(UUID id) throws IllegalStateException{
+        return store.acquire(id.getMostSignificantBits(),id.getLeastSignificantBits(),registry.now(),ticks,ticks) == 0L;
+    }
+    /**
+     * Uses the cooldown if it is ready, starting it again.
+     *
+     * @param entityId the entity id
+     * @return true if it was ready and has now started, false if it is still cooling down
+     * @throws IllegalStateException if the registry is not running
+     */
+    public boolean tryUse(int entityId) throws IllegalStateException{
+        return store.acquire(0L,entityId,registry.now(),ticks,ticks) == 0L;
+    }
+    /**
+     * Returns true if the cooldown is ready for the key, without using it.
+     *
+     * @param id the player's UUID
+     * @return true if ready
+     * @throws IllegalStateException if the registry is not running
+     */
+    public boolean isReady(UUID id) throws IllegalStateException{
+        return store.get(id.getMostSignificantBits(),id.getLeastSignificantBits(),registry.now()) == 0L;
+    }
+    /**
+     * Returns true if the cooldown is ready for the key, without using it.
+     *
+     * @param entityId the entity id
+     * @return true if ready
+     * @throws IllegalStateException if the registry is not running
+     */
+    public boolean isReady(int entityId) throws IllegalStateException{
+        return store.get(0L,entityId,registry.now()) == 0L;
+    }
+    /**
+     * Gets the time left until the cooldown is ready for the key.
+     *
+     * @param id   the player's UUID
+     * @param unit the unit of time to return, rounded up so a cooldown that is not ready never reports 0
+     * @return the time left, 0 if ready
+     * @throws IllegalStateException if the registry is not running
+     */
+    public long getRemaining(UUID id,TimeUnit unit) throws IllegalStateException{
+        return remaining(id.getMostSignificantBits(),id.getLeastSignificantBits(),unit);
+    }
+    /**
+     * Gets the time left until the cooldown is ready for the key.
+     *
+     * @param entityId the entity id
+     * @param unit     the unit of time to return, rounded up so a cooldown that is not ready never reports 0
+     * @return the time left, 0 if ready
+     * @throws IllegalStateException if the registry is not running
+     */
+    public long getRemaining(int entityId,TimeUnit unit) throws IllegalStateException{
+        return remaining(0L,entityId,unit);
+    }
+    /**
+     * Starts the cooldown for the key whether or not it is ready.
+     *
+     * @param id the player's UUID
+     * @throws IllegalStateException if the registry is not running
+     */
+    public void start(UUID id) throws IllegalStateException{
+        final long now = registry.now();
+        store.put(id.getMostSignificantBits(),id.getLeastSignificantBits(),now + ticks,now);
+    }
+    /**
+     * Starts the cooldown for the key whether or not it is ready.
+     *
+     * @param entityId the entity id
+     * @throws IllegalStateException if the registry is not running
+     */
+    public void start(int entityId) throws IllegalStateException{
+        final long now = registry.now();
+        store.put(0L,entityId,now + ticks,now);
+    }
+    /**
+     * Makes the cooldown ready for the key.
+     *
+     * @param id the player's UUID
+     */
+    public void reset(UUID id){
+        store.put(id.getMostSignificantBits(),id.getLeastSignificantBits(),0L,0L);
+    }
+    /**
+     * Makes the cooldown ready for the key.
+     *
+     * @param entityId the entity id
+     */
+    public void reset(int entityId){
+        store.put(0L,entityId,0L,0L);
+    }
+    /**
+     * Gets the number of keys still cooling down. This walks every entry so is meant for diagnostics.
+     *
+     * @return the number of keys cooling down
+     */
+    public int size(){
+        return store.size(registry.getCurrentTick());
+    }
+    /**
+     * Makes the cooldown ready for every key.
+     */
+    public void clear(){
+        store.clear();
+    }
+    private long remaining(long hi,long lo,TimeUnit unit){
+        final long now = registry.now();
+        final long until = store.get(hi,lo,now);
+        return until == 0L ? 0L : ceil(until - now,unit);
+    }
+    /**
+     * Converts ticks to the unit rounding up.
+     */
+    static long ceil(long ticks,TimeUnit unit){
+        final long converted = unit.convert(ticks,TimeUnit.TICKS);
+        return TimeUnit.TICKS.convert(converted,unit) < ticks ? converted + 1L : converted;
+    }
+}
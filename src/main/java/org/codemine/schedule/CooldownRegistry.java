@@ -0,0 +1,180 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A <tt>CooldownRegistry</tt> holds named {@link org.codemine.schedule.Cooldown}s and {@link org.codemine.schedule.TokenBucket}s keyed
+ * by player or entity, replacing the usual <tt>HashMap&lt;UUID,Long&gt;</tt> and cleanup timer per cooldown.
+ * <p>Time is measured on a tick counter advanced by one Bukkit task, so a 5 second cooldown lasts 100 ticks however far the server
+ * falls behind, the same as everything else in game. Lookups and updates can be made from any thread. Keys are stored as primitive
+ * longs in striped tables, nothing is allocated per use and entries simply stop counting once they expire, there is no timer per
+ * entry and no sweep.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * registry = new CooldownRegistry(this);
+ * registry.start();
+ * heal = registry.cooldown("heal",30l,TimeUnit.SECONDS);
+ * chat = registry.bucket("chat",5,2l,TimeUnit.SECONDS);
+ *
+ * if (!heal.tryUse(player.getUniqueId())) {
+ *     player.sendMessage("Wait " + heal.getRemaining(player.getUniqueId(),TimeUnit.SECONDS) + " seconds");
+ * }
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class CooldownRegistry {
+
+    private final Plugin plugin;
+    private final ConcurrentMap<String,Cooldown> cooldowns = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,TokenBucket> buckets = new ConcurrentHashMap<>();
+    private volatile long tick;
+    private volatile boolean running;
+    private BukkitTask driver;
+
+    /**
+     * Creates a registry, it must be started before any cooldown is used.
+     *
+     * @param plugin the reference to the plugin that owns the registry
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public CooldownRegistry(Plugin plugin) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        this.plugin = plugin;
+    }
+    /**
+     * Registers the repeating Bukkit task that counts ticks.
+     *
+     * @throws IllegalStateException if the registry is already running
+     */
+    public synchronized void start() throws IllegalStateException{
+        if (driver != null) {
+            throw new IllegalStateException("Already running as " + driver.getTaskId());
+        }
+        driver = new BukkitRun() {
+
+            @Override
+            public void run(){
+                tick++;
+            }
+        }.runTaskTimer(plugin,1L,1L);
+        running = true;
+    }
+    /**
+     * Stops counting ticks, cooldowns and buckets cannot be used until it is started again.
+     */
+    public synchronized void stop(){
+        if (driver != null) {
+            running = false;
+            driver.cancel();
+            driver = null;
+        }
+    }
+    /**
+     * Returns true if the registry is counting ticks.
+     *
+     * @return true if running
+     */
+    public boolean isRunning(){
+        return running;
+    }
+    /**
+     * Gets the number of ticks counted since the registry was created.
+     *
+     * @return the current tick
+     */
+    public long getCurrentTick(){
+        return tick;
+    }
+    /**
+     * Gets the cooldown with the name, creating it with the duration if there is none. The duration of an existing cooldown is not changed.
+     *
+     * @param name     the name of the cooldown
+     * @param duration the length of the cooldown, rounded down to whole ticks
+     * @param unit     the unit of time the duration relates to
+     * @return the cooldown
+     * @throws IllegalArgumentException if name is null or the duration is shorter than a tick
+     */
+    public Cooldown cooldown(String name,long duration,TimeUnit unit) throws IllegalArgumentException{
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        Cooldown cooldown = cooldowns.get(name);
+        if (cooldown == null) {
+            final Cooldown created = new Cooldown(this,name,ticks(duration,unit));
+            cooldown = cooldowns.putIfAbsent(name,created);
+            if (cooldown == null) {
+                cooldown = created;
+            }
+        }
+        return cooldown;
+    }
+    /**
+     * Gets the token bucket with the name, creating it if there is none. A bucket holds up to capacity tokens and gains one every
+     * refill interval, so it allows bursts of capacity uses and then one use per interval. An existing bucket is not changed.
+     *
+     * @param name     the name of the bucket
+     * @param capacity the largest number of tokens the bucket holds
+     * @param refill   the time it takes to gain one token, rounded down to whole ticks
+     * @param unit     the unit of time the refill interval relates to
+     * @return the token bucket
+     * @throws IllegalArgumentException if name is null, capacity is less than 1 or the refill interval is shorter than a tick
+     */
+    public TokenBucket bucket(String name,int capacity,long refill,TimeUnit unit) throws IllegalArgumentException{
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        TokenBucket bucket = buckets.get(name);
+        if (bucket == null) {
+            final TokenBucket created = new TokenBucket(this,name,capacity,ticks(refill,unit));
+            bucket = buckets.putIfAbsent(name,created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+    /**
+     * Clears every cooldown and token bucket for the player, such as when they leave.
+     *
+     * @param id the player's UUID
+     */
+    public void clear(UUID id){
+        for (Cooldown cooldown : cooldowns.values()) {
+            cooldown.reset(id);
+        }
+        for (TokenBucket bucket : buckets.values()) {
+            bucket.reset(id);
+        }
+    }
+    /**
+     * Gets the tick now, failing fast if the counter is not running since every cooldown would last forever.
+     */
+    long now(){
+        if (!running) {
+            throw new IllegalStateException("Registry is not running");
+        }
+        return tick;
+    }
+    private static long ticks(long duration,TimeUnit unit){
+        final long ticks = unit.toTicks(duration);
+        if (ticks < 1L) {
+            throw new IllegalArgumentException("Duration must be at least 1 tick");
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,19 @@
+package org.codemine.schedule;
+
+/**
+ * A <tt>DurableHandler</tt> runs the {@link org.codemine.schedule.DurableTask}s of one type when they fall due.
+ * <p>Handlers are registered by name with {@link org.codemine.schedule.DurableScheduler#register(String,DurableHandler)} and are always
+ * called on the main thread. A task is only removed from the journal after its handler returns, so a crash while it runs means it
+ * runs again on the next start. Handlers should therefore be safe to run twice for the same task.</p>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public interface DurableHandler {
+
+    /**
+     * Runs a task that has fallen due.
+     *
+     * @param task the task to run
+     */
+    void run(DurableTask task);
+}
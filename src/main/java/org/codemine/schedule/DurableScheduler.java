@@ -0,0 +1,367 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * A <tt>DurableScheduler</tt> runs delayed tasks that survive a server restart, for long delays such as temporary bans, cooldowns
+ * or auction expiry that would otherwise be lost with the {@link org.codemine.schedule.TimeUnit#HOURS} and {@link org.codemine.schedule.TimeUnit#DAYS}
+ * overloads of {@link org.codemine.schedule.BukkitRun#runTaskLater(org.bukkit.plugin.Plugin,long,TimeUnit)}.
+ * <p>Code cannot be saved, so a task is scheduled as a {@link org.codemine.schedule.DurableTask} naming the {@link org.codemine.schedule.DurableHandler}
+ * that runs it, a key and an optional payload. Each schedule, cancel and completion is appended to a memory-mapped journal file and
+ * the journal is compacted once most of it describes tasks that have already gone. {@link #start()} reads the journal back in a single
+ * pass and carries on with the tasks still pending, due times are kept on the wall clock so the time the server was down counts
+ * towards them.</p>
+ * <p>Due tasks are run on the main thread by one Bukkit task that checks every tick, at most {@link #setRunLimit(int)} of them per tick.
+ * This keeps a restart after a long downtime, when many tasks are overdue at once, from stalling the first tick. A task is removed from
+ * the journal after its handler returns, so tasks run at least once but may run twice if the server dies while a handler runs.
+ * Tasks whose handler is not registered yet wait until it is.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * durable = new DurableScheduler(this,new File(getDataFolder(),"tasks.journal"));
+ * durable.register("unban",new DurableHandler() {
+ *     public void run(DurableTask task) {
+ *         Bukkit.getBanList(BanList.Type.NAME).pardon(task.getKey());
+ *     }
+ * });
+ * durable.start();
+ *
+ * durable.schedule("unban",player.getName(),null,3l,TimeUnit.DAYS);
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class DurableScheduler {
+
+    private static final int MAX_NAME = 1024;
+    private static final int COMPACT_MIN = 4096;
+
+    private final Plugin plugin;
+    private final Journal journal;
+    private final Map<String,DurableHandler> handlers = new ConcurrentHashMap<>();
+    private final Map<Long,DurableTask> live = new HashMap<>();
+    private final PriorityQueue<DurableTask> queue = new PriorityQueue<>(64,new Comparator<DurableTask>() {
+
+        public int compare(DurableTask a,DurableTask b){
+            return a.getDueMillis() < b.getDueMillis() ? -1 : a.getDueMillis() > b.getDueMillis() ? 1 : Long.compare(a.getId(),b.getId());
+        }
+    });
+    private final List<DurableTask> waiting = new ArrayList<>();
+    private long nextId = 1L;
+    private int runLimit = 20;
+    private BukkitTask driver;
+    private boolean open;
+
+    /**
+     * Creates a scheduler backed by the journal file, which is created on start if it does not exist.
+     *
+     * @param plugin  the reference to the plugin that owns the tasks
+     * @param journal the file the tasks are kept in
+     * @throws IllegalArgumentException if plugin or journal is null
+     */
+    public DurableScheduler(Plugin plugin,File journal) throws IllegalArgumentException{
+        if (plugin == null || journal == null) {
+            throw new IllegalArgumentException("Plugin and journal cannot be null");
+        }
+        this.plugin = plugin;
+        this.journal = new Journal(journal);
+    }
+    /**
+     * Registers the handler that runs tasks of a type. Tasks of that type that fell due before it was registered are run from the next tick.
+     *
+     * @param type    the name tasks are scheduled with
+     * @param handler the handler that runs them
+     * @throws IllegalArgumentException if type or handler is null
+     */
+    public void register(String type,DurableHandler handler) throws IllegalArgumentException{
+        if (type == null || handler == null) {
+            throw new IllegalArgumentException("Type and handler cannot be null");
+        }
+        handlers.put(type,handler);
+        synchronized (this) {
+            for (Iterator<DurableTask> it = waiting.iterator(); it.hasNext(); ) {
+                final DurableTask task = it.next();
+                if (task.getType().equals(type)) {
+                    it.remove();
+                    queue.add(task);
+                }
+            }
+        }
+    }
+    /**
+     * Reads the journal and starts running tasks as they fall due. Tasks that fell due while the server was down are run from the first tick.
+     *
+     * @throws IOException           if the journal could not be read or created
+     * @throws IllegalStateException if already running
+     */
+    public synchronized void start() throws IOException, IllegalStateException{
+        if (open) {
+            throw new IllegalStateException("Already running");
+        }
+        final List<DurableTask> pending = journal.open();
+        open = true;
+        for (DurableTask task : pending) {
+            live.put(task.getId(),task);
+            queue.add(task);
+        }
+        // Ids of tasks that are long gone are never handed out again, a plugin may still hold one to cancel with.
+        nextId = Math.max(nextId,journal.lastId() + 1L);
+        driver = new BukkitRun() {
+
+            @Override
+            public void run(){
+                tick();
+            }
+        }.runTaskTimer(plugin,1L,1L);
+    }
+    /**
+     * Stops running tasks and closes the journal, pending tasks carry on from where they were on the next {@link #start()}.
+     */
+    public synchronized void stop(){
+        if (!open) {
+            return;
+        }
+        open = false;
+        driver.cancel();
+        driver = null;
+        live.clear();
+        queue.clear();
+        waiting.clear();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING,"Could not close the task journal for " + plugin.getName(),e);
+        }
+    }
+    /**
+     * Returns true if the scheduler is running.
+     *
+     * @return true if running
+     */
+    public synchronized boolean isRunning(){
+        return open;
+    }
+    /**
+     * Sets the largest number of due tasks run in a single tick, the rest are run on the following ticks.
+     *
+     * @param tasks the number of tasks per tick
+     * @throws IllegalArgumentException if tasks is less than 1
+     */
+    public synchronized void setRunLimit(int tasks) throws IllegalArgumentException{
+        if (tasks < 1) {
+            throw new IllegalArgumentException("Run limit must be at least 1");
+        }
+        this.runLimit = tasks;
+    }
+    /**
+     * Gets the largest number of due tasks run in a single tick.
+     *
+     * @return the number of tasks per tick
+     */
+    public synchronized int getRunLimit(){
+        return runLimit;
+    }
+    /**
+     * Schedules a task that survives restarts. May be called from any thread.
+     *
+     * @param type    the name of the handler that runs the task
+     * @param key     the key of the task, such as a player name or UUID
+     * @param payload any extra data the handler needs, may be null
+     * @param delay   the delay before the task runs
+     * @param unit    the unit of time the delay value relates to
+     * @return the task that was scheduled
+     * @throws IllegalArgumentException if type or key is null or longer than 1024 characters
+     * @throws IllegalStateException    if not running or the journal could not be written
+     */
+    public synchronized DurableTask schedule(String type,String key,byte[] payload,long delay,TimeUnit unit) throws IllegalArgumentException, IllegalStateException{
+        if (type == null || key == null || unit == null) {
+            throw new IllegalArgumentException("Type, key and unit cannot be null");
+        }
+        if (type.length() > MAX_NAME || key.length() > MAX_NAME) {
+            throw new IllegalArgumentException("Type and key cannot be longer than " + MAX_NAME + " characters");
+        }
+        checkOpen();
+        final long now = TaskScheduler.getDefault().currentTimeMillis();
+        long due = now + unit.toMillis(Math.max(0L,delay));
+        if (due < now) {
+            // A delay such as Long.MAX_VALUE days means never, not a time that wrapped into the past.
+            due = Long.MAX_VALUE;
+        }
+        final DurableTask task = new DurableTask(nextId++,type,key,payload == null ? null : payload.clone(),due);
+        try {
+            journal.schedule(task);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the task journal",e);
+        }
+        live.put(task.getId(),task);
+        queue.add(task);
+        return task;
+    }
+    /**
+     * Cancels a pending task.
+     *
+     * @param id the id of the task
+     * @return true if the task was pending
+     * @throws IllegalStateException if not running or the journal could not be written
+     */
+    public synchronized boolean cancel(long id) throws IllegalStateException{
+        checkOpen();
+        final DurableTask task = live.get(id);
+        if (task == null) {
+            return false;
+        }
+        remove(task);
+        queue.remove(task);
+        waiting.remove(task);
+        return true;
+    }
+    /**
+     * Cancels every pending task of a type with the key.
+     *
+     * @param type the name of the handler the tasks were scheduled with
+     * @param key  the key the tasks were scheduled with
+     * @return the number of tasks cancelled
+     * @throws IllegalStateException if not running or the journal could not be written
+     */
+    public synchronized int cancel(String type,String key) throws IllegalStateException{
+        checkOpen();
+        final List<DurableTask> found = find(type,key);
+        for (DurableTask task : found) {
+            remove(task);
+            queue.remove(task);
+            waiting.remove(task);
+        }
+        return found.size();
+    }
+    /**
+     * Gets a pending task.
+     *
+     * @param id the id of the task
+     * @return the task, or null if it is not pending
+     */
+    public synchronized DurableTask get(long id){
+        return live.get(id);
+    }
+    /**
+     * Gets every pending task of a type with the key, such as to show the time left on a ban.
+     *
+     * @param type the name of the handler the tasks were scheduled with
+     * @param key  the key the tasks were scheduled with
+     * @return the pending tasks, in no particular order
+     */
+    public synchronized List<DurableTask> get(String type,String key){
+        return find(type,key);
+    }
+    /**
+     * Gets the number of pending tasks.
+     *
+     * @return the number of pending tasks
+     */
+    public synchronized int size(){
+        return live.size();
+    }
+    /**
+     * Rewrites the journal to hold only the pending tasks. This happens by itself once the journal is mostly spent, calling it is only
+     * needed to reclaim the space sooner.
+     *
+     * @throws IOException           if the journal could not be rewritten
+     * @throws IllegalStateException if not running
+     */
+    public synchronized void compact() throws IOException, IllegalStateException{
+        checkOpen();
+        journal.compact(live.values());
+    }
+    /**
+     * Forces every change so far onto the disk. Changes are kept by the operating system if only the server process dies, this only
+     * matters to survive the machine itself going down.
+     */
+    public synchronized void flush(){
+        if (open) {
+            journal.force();
+        }
+    }
+    /**
+     * Runs the tasks that have fallen due, up to the run limit. Handlers are called without holding the lock so other threads can
+     * schedule meanwhile.
+     */
+    void tick(){
+        final List<DurableTask> due = new ArrayList<>();
+        synchronized (this) {
+            final long now = TaskScheduler.getDefault().currentTimeMillis();
+            while (due.size() < runLimit && !queue.isEmpty() && queue.peek().getDueMillis() <= now) {
+                final DurableTask task = queue.poll();
+                if (live.get(task.getId()) != task) {
+                    continue;
+                }
+                if (handlers.containsKey(task.getType())) {
+                    due.add(task);
+                } else {
+                    waiting.add(task);
+                }
+            }
+        }
+        for (DurableTask task : due) {
+            synchronized (this) {
+                if (!open || live.get(task.getId()) != task) {
+                    continue;
+                }
+            }
+            try {
+                handlers.get(task.getType()).run(task);
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING,"Durable task " + task.getType() + " for " + plugin.getName() + " generated an exception",t);
+            }
+            synchronized (this) {
+                if (open && live.get(task.getId()) == task) {
+                    remove(task);
+                }
+            }
+        }
+    }
+    private void remove(DurableTask task){
+        live.remove(task.getId());
+        try {
+            journal.remove(task.getId());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the task journal",e);
+        }
+        if (journal.records() >= COMPACT_MIN && journal.records() > live.size() * 4L) {
+            try {
+                journal.compact(live.values());
+            } catch (IOException e) {
+                // The old journal is still open and complete, compaction is tried again on the next removal.
+                plugin.getLogger().log(Level.WARNING,"Could not compact the task journal for " + plugin.getName(),e);
+            }
+        }
+    }
+    private List<DurableTask> find(String type,String key){
+        final List<DurableTask> found = new ArrayList<>();
+        for (DurableTask task : live.values()) {
+            if (task.getType().equals(type) && task.getKey().equals(key)) {
+                found.add(task);
+            }
+        }
+        return found;
+    }
+    private void checkOpen(){
+        if (!open) {
+            throw new IllegalStateException("Not running");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.codemine.schedule;
+
+/**
+ * A <tt>DurableTask</tt> describes a task scheduled on a {@link org.codemine.schedule.DurableScheduler}.
+ * <p>It holds no code, only the name of the {@link org.codemine.schedule.DurableHandler} that runs it, a key such as a player's UUID
+ * and an optional payload, which is what allows it to be written to disk and run again after a restart.</p>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class DurableTask {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final long id;
+    private final String type;
+    private final String key;
+    private final byte[] payload;
+    private final long due;
+
+    DurableTask(long id,String type,String key,byte[] payload,long due){
+        this.id = id;
+        this.type = type;
+        this.key = key;
+        this.payload = payload == null ? EMPTY : payload;
+        this.due = due;
+    }
+    /**
+     * Gets the id the task was scheduled as.
+     *
+     * @return the task id
+     */
+    public long getId(){
+        return id;
+    }
+    /**
+     * Gets the name of the handler that runs the task.
+     *
+     * @return the handler name
+     */
+    public String getType(){
+        return type;
+    }
+    /**
+     * Gets the key the task was scheduled with.
+     *
+     * @return the task key
+     */
+    public String getKey(){
+        return key;
+    }
+    /**
+     * Gets the payload the task was scheduled with. The array is shared, it must not be modified.
+     *
+     * @return the payload, empty if there was none
+     */
+    public byte[] getPayload(){
+        return payload;
+    }
+    /**
+     * Gets the wall clock time the task is due.
+     *
+     * @return the due time in milliseconds since the epoch
+     */
+    public long getDueMillis(){
+        return due;
+    }
+    /**
+     * Gets the time left until the task is due.
+     *
+     * @param unit the unit of time to return
+     * @return the remaining time, 0 if the task is overdue
+     */
+    public long getRemaining(TimeUnit unit){
+        return unit.convert(Math.max(0L,due - TaskScheduler.getDefault().currentTimeMillis()),TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,283 @@
+package org.codemine.schedule;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A <tt>Duration</tt> packs an amount and a {@link org.codemine.schedule.TimeUnit} into a single primitive <tt>long</tt>, so durations
+ * read from configuration can be stored in fields, arrays and collections of primitives without any objects.
+ * <p>The lowest 3 bits hold the ordinal of the unit and the remaining 61 bits the signed amount, so amounts up to about 1.15 &times; 10<sup>18</sup>
+ * can be packed. Converting a packed duration to ticks or milliseconds is a table lookup and a multiply, it allocates nothing and
+ * makes no virtual call.</p>
+ * <p>{@link #parse(String)} reads strings made of one or more amounts each followed by a unit: <tt>ms</tt>, <tt>t</tt>, <tt>s</tt>,
+ * <tt>m</tt>, <tt>h</tt> or <tt>d</tt>, such as <tt>"1h30m"</tt>, <tt>"15s"</tt> or <tt>"40t"</tt>. Parts may be separated by spaces
+ * and the result is expressed in the finest unit used, so <tt>"1h30m"</tt> is 90 minutes. Parsed strings are cached, so parsing
+ * the same string again is a single map lookup.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * long cooldown = Duration.parse(getConfig().getString("cooldown","1m30s"));
+ *
+ * new BukkitRun() {
+ *
+ *     public void run() {
+ *         player.sendMessage("You can use the kit again");
+ *     }
+ * }.runTaskLaterPacked(this,cooldown);
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class Duration {
+
+    /**
+     * A packed duration of zero ticks.
+     */
+    public static final long ZERO = 1L;
+
+    private static final int UNIT_BITS = 3;
+    private static final long UNIT_MASK = (1L << UNIT_BITS) - 1L;
+    private static final long MAX_AMOUNT = Long.MAX_VALUE >> UNIT_BITS;
+    private static final long MIN_AMOUNT = Long.MIN_VALUE >> UNIT_BITS;
+    private static final int CACHE_LIMIT = 4096;
+    private static final TimeUnit[] UNITS = TimeUnit.values();
+    private static final long[] MILLIS = {1L,50L,1000L,60000L,3600000L,86400000L};
+    private static final long[] TICKS = {0L,1L,20L,1200L,72000L,1728000L};
+    private static final ConcurrentMap<String,Long> CACHE = new ConcurrentHashMap<>();
+
+    private Duration(){
+    }
+    /**
+     * Packs the amount and unit into a duration.
+     *
+     * @param amount the amount of time
+     * @param unit   the unit the amount relates to
+     * @return the packed duration
+     * @throws IllegalArgumentException if unit is null or the amount does not fit in 61 bits
+     */
+    public static long of(long amount,TimeUnit unit) throws IllegalArgumentException{
+        if (unit == null) {
+            throw new IllegalArgumentException("Unit cannot be null");
+        }
+        if (amount > MAX_AMOUNT || amount < MIN_AMOUNT) {
+            throw new IllegalArgumentException("Amount " + amount + " is too large to pack");
+        }
+        return amount << UNIT_BITS | unit.ordinal();
+    }
+    /**
+     * Packs a number of ticks into a duration.
+     *
+     * @param ticks the number of ticks
+     * @return the packed duration
+     * @throws IllegalArgumentException if ticks does not fit in 61 bits
+     */
+    public static long ofTicks(long ticks) throws IllegalArgumentException{
+        return of(ticks,TimeUnit.TICKS);
+    }
+    /**
+     * Gets the amount of a packed duration, in its own unit.
+     *
+     * @param duration the packed duration
+     * @return the amount
+     */
+    public static long amount(long duration){
+        return duration >> UNIT_BITS;
+    }
+    /**
+     * Gets the unit of a packed duration.
+     *
+     * @param duration the packed duration
+     * @return the unit
+     * @throws IllegalArgumentException if the value is not a packed duration
+     */
+    public static TimeUnit unit(long duration) throws IllegalArgumentException{
+        return UNITS[index(duration)];
+    }
+    /**
+     * Converts a packed duration to server ticks, saturating at <tt>Long.MAX_VALUE</tt> or <tt>Long.MIN_VALUE</tt>.
+     * Durations shorter than a tick truncate towards zero.
+     *
+     * @param duration the packed duration
+     * @return the number of ticks
+     * @throws IllegalArgumentException if the value is not a packed duration
+     */
+    public static long toTicks(long duration) throws IllegalArgumentException{
+        final int unit = index(duration);
+        final long amount = duration >> UNIT_BITS;
+        return unit == 0 ? amount / 50L : scale(amount,TICKS[unit]);
+    }
+    /**
+     * Converts a packed duration to milliseconds, saturating at <tt>Long.MAX_VALUE</tt> or <tt>Long.MIN_VALUE</tt>.
+     *
+     * @param duration the packed duration
+     * @return the number of milliseconds
+     * @throws IllegalArgumentException if the value is not a packed duration
+     */
+    public static long toMillis(long duration) throws IllegalArgumentException{
+        return scale(duration >> UNIT_BITS,MILLIS[index(duration)]);
+    }
+    /**
+     * Converts a packed duration to server ticks using the tick rate measured by a {@link org.codemine.schedule.TickRateEstimator}.
+     *
+     * @param duration the packed duration
+     * @param rate     the estimator to convert with, or null to use the fixed tick length
+     * @return the number of ticks
+     * @throws IllegalArgumentException if the value is not a packed duration
+     * @see org.codemine.schedule.TimeUnit#toTicks(long,TickRateEstimator)
+     */
+    public static long toTicks(long duration,TickRateEstimator rate) throws IllegalArgumentException{
+        return rate == null ? toTicks(duration) : rate.toTicks(duration >> UNIT_BITS,unit(duration));
+    }
+    /**
+     * Parses a duration string such as <tt>"1h30m"</tt>, <tt>"15s"</tt> or <tt>"40t"</tt>. Results are cached, so this is cheap to
+     * call with the same string every time it is used.
+     *
+     * @param text the string to parse
+     * @return the packed duration, in the finest unit the string uses
+     * @throws IllegalArgumentException if text is null or not a valid duration
+     */
+    public static long parse(String text) throws IllegalArgumentException{
+        if (text == null) {
+            throw new IllegalArgumentException("Duration cannot be null");
+        }
+        final Long cached = CACHE.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        final long duration = parse0(text);
+        if (CACHE.size() < CACHE_LIMIT) {
+            CACHE.putIfAbsent(text,duration);
+        }
+        return duration;
+    }
+    /**
+     * Formats a packed duration as a string that {@link #parse(String)} reads back, such as <tt>"90m"</tt>.
+     *
+     * @param duration the packed duration
+     * @return the formatted duration
+     * @throws IllegalArgumentException if the value is not a packed duration
+     */
+    public static String toString(long duration) throws IllegalArgumentException{
+        return (duration >> UNIT_BITS) + suffix(index(duration));
+    }
+    private static long parse0(String text){
+        final int length = text.length();
+        int i = 0;
+        int finest = -1;
+        long total = 0L;
+        boolean parts = false;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw invalid(text);
+            }
+            long amount = 0L;
+            while (i < length && (c = text.charAt(i)) >= '0' && c <= '9') {
+                if (amount > (MAX_AMOUNT - (c - '0')) / 10L) {
+                    throw invalid(text);
+                }
+                amount = amount * 10L + (c - '0');
+                i++;
+            }
+            final int unit;
+            switch (i < length ? Character.toLowerCase(text.charAt(i)) : ' ') {
+                case 'm':
+                    if (i + 1 < length && Character.toLowerCase(text.charAt(i + 1)) == 's') {
+                        unit = 0;
+                        i++;
+                    } else {
+                        unit = 3;
+                    }
+                    break;
+                case 't':
+                    unit = 1;
+                    break;
+                case 's':
+                    unit = 2;
+                    break;
+                case 'h':
+                    unit = 4;
+                    break;
+                case 'd':
+                    unit = 5;
+                    break;
+                default:
+                    throw invalid(text);
+            }
+            i++;
+            if (finest < 0) {
+                finest = unit;
+            } else if (unit < finest) {
+                total = rescale(total,finest,unit,text);
+                finest = unit;
+            }
+            total = add(total,rescale(amount,unit,finest,text),text);
+            parts = true;
+        }
+        if (!parts) {
+            throw invalid(text);
+        }
+        return total << UNIT_BITS | finest;
+    }
+    /**
+     * Expresses an amount in a finer unit, the factor between any two units is a whole number so this is exact.
+     */
+    private static long rescale(long amount,int from,int to,String text){
+        if (from == to) {
+            return amount;
+        }
+        final long factor = MILLIS[from] / MILLIS[to];
+        if (amount > MAX_AMOUNT / factor) {
+            throw invalid(text);
+        }
+        return amount * factor;
+    }
+    private static long add(long a,long b,String text){
+        if (a > MAX_AMOUNT - b) {
+            throw invalid(text);
+        }
+        return a + b;
+    }
+    private static long scale(long amount,long factor){
+        if (amount > Long.MAX_VALUE / factor) {
+            return Long.MAX_VALUE;
+        }
+        if (amount < Long.MIN_VALUE / factor) {
+            return Long.MIN_VALUE;
+        }
+        return amount * factor;
+    }
+    private static int index(long duration){
+        final int unit = (int) (duration & UNIT_MASK);
+        if (unit >= UNITS.length) {
+            throw new IllegalArgumentException("Not a packed duration: " + duration);
+        }
+        return unit;
+    }
+    private static String suffix(int unit){
+        switch (unit) {
+            case 0:
+                return "ms";
+            case 1:
+                return "t";
+            case 2:
+                return "s";
+            case 3:
+                return "m";
+            case 4:
+                return "h";
+            default:
+                return "d";
+        }
+    }
+    private static IllegalArgumentException invalid(String text){
+        return new IllegalArgumentException("Invalid duration: " + text);
+    }
+}
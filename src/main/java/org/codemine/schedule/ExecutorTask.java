@@ -0,0 +1,48 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * The task returned when a <tt>BukkitRun</tt> is run on an {@link org.codemine.schedule.AsyncExecutor}.
+ * <p>For delayed and repeating tasks the timing is done by a Bukkit task, the trigger, which hands each run to the executor.
+ * Cancelling cancels both the trigger and the <tt>BukkitRun</tt> so a run that is already queued will not start.</p>
+ */
+final class ExecutorTask implements BukkitTask {
+
+    private final int id;
+    private final Plugin owner;
+    private final BukkitRun run;
+    private final BukkitTask trigger;
+    private volatile boolean cancelled;
+
+    ExecutorTask(int id,Plugin owner,BukkitRun run,BukkitTask trigger){
+        this.id = id;
+        this.owner = owner;
+        this.run = run;
+        this.trigger = trigger;
+    }
+    @Override
+    public int getTaskId(){
+        return id;
+    }
+    @Override
+    public Plugin getOwner(){
+        return owner;
+    }
+    @Override
+    public boolean isSync(){
+        return false;
+    }
+    @Override
+    public void cancel(){
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        if (trigger != null) {
+            trigger.cancel();
+        }
+        run.cancel();
+    }
+}
@@ -0,0 +1,286 @@
+package org.codemine.schedule;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only file behind a {@link org.codemine.schedule.DurableScheduler}, mapped into memory so that appends are plain
+ * memory writes the operating system flushes in the background.
+ * <p>The file starts with a magic number and version followed by records, each being its length, a CRC32 of its body and the body
+ * itself. A body is either a schedule record carrying a whole {@link org.codemine.schedule.DurableTask} or a remove record carrying
+ * only an id. The mapping is larger than the data, the unused space is zero so reading stops at the first record with a length of 0,
+ * or at a record torn by a crash whose checksum does not match. Not thread safe, the scheduler guards every call.</p>
+ * <p>The highest id ever written is remembered so ids are not handed out twice. Compaction keeps it by writing a remove record for it
+ * when that task is gone, which reading treats like any other remove of a task that is not pending.</p>
+ */
+final class Journal {
+
+    private static final int MAGIC = 0x42524a31;
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final byte SCHEDULE = 1;
+    private static final byte REMOVE = 2;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int records;
+    private long lastId;
+
+    Journal(File file){
+        this.file = file;
+    }
+    /**
+     * Maps the file, creating it if needed, and reads it in one pass. Returns the tasks still pending in the order they were scheduled
+     * and leaves the write position after the last good record.
+     */
+    List<DurableTask> open() throws IOException{
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        final boolean fresh = !file.exists() || file.length() < HEADER;
+        map(Math.max(INITIAL_SIZE,file.length()));
+        if (fresh) {
+            buffer.putInt(0,MAGIC);
+            buffer.putInt(4,VERSION);
+            buffer.position(HEADER);
+            records = 0;
+            lastId = 0L;
+            return new ArrayList<>();
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            close();
+            throw new IOException(file + " is not a task journal");
+        }
+        records = 0;
+        lastId = 0L;
+        final Map<Long,DurableTask> live = new LinkedHashMap<>();
+        final ByteBuffer read = buffer.duplicate();
+        int position = HEADER;
+        while (position + 8 <= read.capacity()) {
+            final int length = read.getInt(position);
+            if (length <= 0 || position + 8L + length > read.capacity()) {
+                break;
+            }
+            final byte[] body = new byte[length];
+            read.position(position + 8);
+            read.get(body);
+            if (checksum(body) != read.getInt(position + 4)) {
+                break;
+            }
+            final ByteBuffer record = ByteBuffer.wrap(body);
+            final byte kind = record.get();
+            final long id = record.getLong();
+            lastId = Math.max(lastId,id);
+            if (kind == SCHEDULE) {
+                final long due = record.getLong();
+                final String type = string(record);
+                final String key = string(record);
+                final byte[] payload = new byte[record.getInt()];
+                record.get(payload);
+                live.put(id,new DurableTask(id,type,key,payload,due));
+            } else {
+                live.remove(id);
+            }
+            position += 8 + length;
+            records++;
+        }
+        buffer.position(position);
+        if (position + 8 <= buffer.capacity()) {
+            // Zero whatever a torn write left behind so it cannot be mistaken for a record once appends reach it.
+            buffer.putInt(position,0);
+        }
+        return new ArrayList<>(live.values());
+    }
+    void schedule(DurableTask task) throws IOException{
+        append(body(task));
+        lastId = Math.max(lastId,task.getId());
+    }
+    void remove(long id) throws IOException{
+        append(removal(id));
+    }
+    /**
+     * Gets the highest task id the journal has ever held, 0 if none.
+     */
+    long lastId(){
+        return lastId;
+    }
+    /**
+     * Gets the number of records in the file, live or not.
+     */
+    int records(){
+        return records;
+    }
+    /**
+     * Replaces the journal with one holding only the pending tasks. The new file is written beside the old one and moved over it,
+     * so a crash part way through leaves the old journal intact. If the move fails, for instance because the platform will not replace
+     * a file that is still mapped, the old journal is mapped again and stays in use.
+     */
+    void compact(Collection<DurableTask> live) throws IOException{
+        final File temp = new File(file.getPath() + ".tmp");
+        boolean keepsLast = false;
+        for (DurableTask task : live) {
+            keepsLast |= task.getId() == lastId;
+        }
+        int count = 0;
+        long written = HEADER;
+        try (RandomAccessFile out = new RandomAccessFile(temp,"rw")) {
+            out.setLength(0L);
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.write(header);
+            if (!keepsLast && lastId > 0L) {
+                written += write(channel,removal(lastId));
+                count++;
+            }
+            for (DurableTask task : live) {
+                written += write(channel,body(task));
+                count++;
+            }
+            channel.force(true);
+        }
+        final int position = buffer.position();
+        final long size = buffer.capacity();
+        close();
+        try {
+            Files.move(temp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                map(size);
+                buffer.position(position);
+                Files.deleteIfExists(temp.toPath());
+            } catch (IOException reopen) {
+                e.addSuppressed(reopen);
+            }
+            throw e;
+        }
+        map(Math.max(INITIAL_SIZE,written * 2L));
+        buffer.position((int) written);
+        records = count;
+    }
+    /**
+     * Forces every write so far onto the disk.
+     */
+    void force(){
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+    void close() throws IOException{
+        if (buffer != null) {
+            final MappedByteBuffer mapped = buffer;
+            buffer = null;
+            mapped.force();
+            unmap(mapped);
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+    private void append(byte[] body) throws IOException{
+        if (buffer == null) {
+            throw new IOException("Journal is closed");
+        }
+        final int needed = 8 + body.length + 8;
+        if (buffer.remaining() < needed) {
+            final int position = buffer.position();
+            map(Math.max((long) buffer.capacity() * 2L,(long) position + needed));
+            buffer.position(position);
+        }
+        final int position = buffer.position();
+        buffer.position(position + 4);
+        buffer.putInt(checksum(body)).put(body);
+        // The length goes in last, a record is not visible to a reader until it is complete.
+        buffer.putInt(position,body.length);
+        records++;
+    }
+    private static int write(FileChannel channel,byte[] body) throws IOException{
+        final ByteBuffer record = ByteBuffer.allocate(8 + body.length).putInt(body.length).putInt(checksum(body)).put(body);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        return 8 + body.length;
+    }
+    private static byte[] removal(long id){
+        return ByteBuffer.allocate(9).put(REMOVE).putLong(id).array();
+    }
+    private static byte[] body(DurableTask task){
+        final byte[] type = task.getType().getBytes(StandardCharsets.UTF_8);
+        final byte[] key = task.getKey().getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = task.getPayload();
+        final ByteBuffer body = ByteBuffer.allocate(17 + 2 + type.length + 2 + key.length + 4 + payload.length);
+        body.put(SCHEDULE).putLong(task.getId()).putLong(task.getDueMillis());
+        body.putShort((short) type.length).put(type);
+        body.putShort((short) key.length).put(key);
+        body.putInt(payload.length).put(payload);
+        return body.array();
+    }
+    private static int checksum(byte[] body){
+        final CRC32 crc = new CRC32();
+        crc.update(body,0,body.length);
+        return (int) crc.getValue();
+    }
+    private void map(long size) throws IOException{
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal cannot grow past 2GB");
+        }
+        if (raf == null) {
+            raf = new RandomAccessFile(file,"rw");
+        }
+        final MappedByteBuffer previous = buffer;
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,0L,size);
+        if (previous != null) {
+            unmap(previous);
+        }
+    }
+    /**
+     * Releases the mapping straight away instead of when the buffer is collected, so the file can be moved or deleted. There is no
+     * public API for this, so it goes through the JDK internals by reflection and falls back to waiting for the collector when they
+     * are not there. The buffer must never be touched again.
+     */
+    private static void unmap(MappedByteBuffer mapped){
+        try {
+            // Java 9 and later.
+            final Class<?> type = Class.forName("sun.misc.Unsafe");
+            final java.lang.reflect.Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            type.getMethod("invokeCleaner",ByteBuffer.class).invoke(field.get(null),mapped);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Fall through to the Java 7 and 8 way.
+        }
+        try {
+            final java.lang.reflect.Method cleaner = mapped.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            final Object clean = cleaner.invoke(mapped);
+            if (clean != null) {
+                clean.getClass().getMethod("clean").invoke(clean);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Left for the garbage collector.
+        }
+    }
+    private static String string(ByteBuffer record){
+        final byte[] bytes = new byte[record.getShort() & 0xffff];
+        record.get(bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+}
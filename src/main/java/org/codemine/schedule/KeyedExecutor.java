@@ -0,0 +1,323 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * A <tt>KeyedExecutor</tt> runs asynchronous work in order for each key while work for different keys runs in parallel, such as
+ * saving and loading player data keyed by UUID without a global lock.
+ * <p>Each key with work waiting has a small queue of its own. The first task queued for an idle key hands the queue to the worker
+ * pool, which runs that key's tasks one after another, so tasks for one key never overlap and run in the order they were queued.
+ * No thread is held per key, a key only uses a worker while it has work, and a queue that empties is dropped so idle keys cost nothing.
+ * A busy key gives its worker back after every 32 tasks so one key can not starve the others.</p>
+ * <p>Work queued with {@link #executeLatest(Object,Runnable)} replaces the task queued before it for the same key if that was also
+ * queued with <tt>executeLatest</tt> and has not started yet, so a burst of saves for one player only writes the newest data.</p>
+ * <p>The pool is an {@link java.util.concurrent.Executor} such as an {@link org.codemine.schedule.AsyncExecutor}, or the default async
+ * executor if none is given. A bounded executor must use the ABORT or CALLER_RUNS policy, executors that discard work are refused. If
+ * the executor drops a key's queue anyway, for instance after it was shut down, the tasks left in it wait for the next task queued for
+ * the key and a warning is logged.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * saves = new KeyedExecutor<UUID>(this);
+ *
+ * saves.execute(player.getUniqueId(),new Runnable() {
+ *     public void run() {
+ *         data.load(id);
+ *     }
+ * });
+ * saves.executeLatest(player.getUniqueId(),new Runnable() {
+ *     public void run() {
+ *         data.save(id,snapshot);
+ *     }
+ * });
+ * }
+ * </pre></tt>
+ *
+ * @param <K> the type of the keys
+ * @version 1.0-SNAPSHOT
+ */
+public class KeyedExecutor<K> {
+
+    private static final int BATCH = 32;
+
+    private final Plugin plugin;
+    private final Executor executor;
+    private final ConcurrentMap<K,Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+
+    /**
+     * Creates a keyed executor that runs on the default {@link org.codemine.schedule.AsyncExecutor}, or Bukkit's async scheduler if
+     * there is none.
+     *
+     * @param plugin the reference to the plugin that owns the executor
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public KeyedExecutor(Plugin plugin) throws IllegalArgumentException{
+        this(plugin,null);
+    }
+    /**
+     * Creates a keyed executor that runs on the executor.
+     *
+     * @param plugin   the reference to the plugin that owns the executor
+     * @param executor the pool to run tasks on, or null to use the default
+     * @throws IllegalArgumentException if plugin is null or the executor discards work when it is full
+     */
+    public KeyedExecutor(Plugin plugin,Executor executor) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (discards(executor)) {
+            throw new IllegalArgumentException("Executor cannot discard work, use the ABORT or CALLER_RUNS policy");
+        }
+        this.plugin = plugin;
+        this.executor = executor;
+    }
+    /**
+     * Queues the task to run after every task already queued for the key.
+     *
+     * @param key  the key to order the task by
+     * @param task the task to run
+     * @throws IllegalArgumentException   if key or task is null
+     * @throws RejectedExecutionException if the key was idle and the executor refused it, the task is not queued
+     */
+    public void execute(K key,Runnable task) throws IllegalArgumentException, RejectedExecutionException{
+        queue(key,task,false);
+    }
+    /**
+     * Queues the task to run after every task already queued for the key, replacing the last queued task instead if it was also
+     * queued with this method and has not started.
+     *
+     * @param key  the key to order the task by
+     * @param task the task to run
+     * @throws IllegalArgumentException   if key or task is null
+     * @throws RejectedExecutionException if the key was idle and the executor refused it, the task is not queued
+     */
+    public void executeLatest(K key,Runnable task) throws IllegalArgumentException, RejectedExecutionException{
+        queue(key,task,true);
+    }
+    /**
+     * Gets the number of tasks queued for the key, not counting one that is running.
+     *
+     * @param key the key
+     * @return the number of tasks waiting
+     */
+    public int getQueueDepth(K key){
+        final Mailbox mailbox = mailboxes.get(key);
+        if (mailbox == null) {
+            return 0;
+        }
+        synchronized (mailbox) {
+            return mailbox.queue.size();
+        }
+    }
+    /**
+     * Gets the number of keys with a task queued or running.
+     *
+     * @return the number of busy keys
+     */
+    public int getActiveKeys(){
+        return mailboxes.size();
+    }
+    /**
+     * Gets the number of tasks that have finished running.
+     *
+     * @return the completed task count
+     */
+    public long getCompletedCount(){
+        return completed.get();
+    }
+    /**
+     * Gets the number of tasks replaced by a newer one before they started.
+     *
+     * @return the merged task count
+     */
+    public long getMergedCount(){
+        return merged.get();
+    }
+    private void queue(K key,Runnable task,boolean latest){
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        for (; ; ) {
+            Mailbox mailbox = mailboxes.get(key);
+            if (mailbox == null) {
+                final Mailbox created = new Mailbox(key);
+                mailbox = mailboxes.putIfAbsent(key,created);
+                if (mailbox == null) {
+                    mailbox = created;
+                }
+            }
+            final boolean idle;
+            synchronized (mailbox) {
+                if (mailbox.dead) {
+                    mailboxes.remove(key,mailbox);
+                    continue;
+                }
+                // Only merge into a queue the pool already has, the submit below could still fail and the older task would be lost.
+                if (latest && mailbox.mergeable && mailbox.scheduled) {
+                    mailbox.queue.pollLast();
+                    merged.incrementAndGet();
+                }
+                mailbox.queue.addLast(task);
+                mailbox.mergeable = latest;
+                idle = !mailbox.scheduled;
+                mailbox.scheduled = true;
+            }
+            if (idle) {
+                try {
+                    submit(mailbox);
+                } catch (RuntimeException e) {
+                    synchronized (mailbox) {
+                        // Tasks queued by other threads meanwhile stay, the next task queued for the key submits them again.
+                        mailbox.queue.removeFirstOccurrence(task);
+                        mailbox.mergeable = false;
+                        mailbox.scheduled = false;
+                        if (mailbox.queue.isEmpty()) {
+                            mailbox.dead = true;
+                            mailboxes.remove(key,mailbox);
+                        }
+                    }
+                    throw e;
+                }
+            }
+            return;
+        }
+    }
+    private void submit(Runnable mailbox){
+        if (executor != null) {
+            executor.execute(mailbox);
+        } else {
+            AsyncExecutor.dispatch(plugin,mailbox);
+        }
+    }
+    private static boolean discards(Executor executor){
+        if (executor instanceof AsyncExecutor) {
+            final AsyncExecutor.RejectionPolicy policy = ((AsyncExecutor) executor).getRejectionPolicy();
+            return policy == AsyncExecutor.RejectionPolicy.DISCARD || policy == AsyncExecutor.RejectionPolicy.DISCARD_OLDEST;
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            final RejectedExecutionHandler handler = ((ThreadPoolExecutor) executor).getRejectedExecutionHandler();
+            return handler instanceof ThreadPoolExecutor.DiscardPolicy || handler instanceof ThreadPoolExecutor.DiscardOldestPolicy;
+        }
+        return false;
+    }
+
+    /**
+     * The queue of one key, run as a single task on the pool until it is empty. A mailbox that empties is marked dead and removed,
+     * a task queued for the key at the same time sees the mark and creates a new one.
+     */
+    private final class Mailbox implements Runnable, AsyncExecutor.Droppable {
+
+        final K key;
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        boolean scheduled;
+        boolean mergeable;
+        boolean dead;
+
+        Mailbox(K key){
+            this.key = key;
+        }
+        @Override
+        public void run(){
+            for (; ; ) {
+                for (int ran = 0; ran < BATCH; ran++) {
+                    final Runnable task;
+                    synchronized (this) {
+                        task = queue.pollFirst();
+                        if (task == null) {
+                            scheduled = false;
+                            dead = true;
+                            mailboxes.remove(key,this);
+                            return;
+                        }
+                        if (queue.isEmpty()) {
+                            mergeable = false;
+                        }
+                    }
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        plugin.getLogger().log(Level.WARNING,"Keyed task " + TaskMetrics.label(task) + " for " + plugin.getName() + " generated an exception",t);
+                    }
+                    completed.incrementAndGet();
+                }
+                // Give the worker back so other keys get a turn, if the pool refuses or runs it right here keep going on this thread.
+                final Handoff handoff = new Handoff(this);
+                try {
+                    submit(handoff);
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                if (!handoff.ranHere()) {
+                    return;
+                }
+            }
+        }
+        @Override
+        public void dropped(){
+            final int left;
+            synchronized (this) {
+                scheduled = false;
+                mergeable = false;
+                left = queue.size();
+                if (left == 0) {
+                    dead = true;
+                    mailboxes.remove(key,this);
+                }
+            }
+            plugin.getLogger().log(Level.WARNING,"Keyed tasks for " + key + " in " + plugin.getName() + " were dropped by the executor, " + left + " wait for the next task queued for the key");
+        }
+    }
+
+    /**
+     * Hands a mailbox back to the pool after a batch. A pool that runs it on the submitting thread before {@link #ranHere()}, as the
+     * CALLER_RUNS policy does, only gets it marked so the mailbox keeps going in its own loop instead of growing the stack.
+     */
+    private final class Handoff implements Runnable, AsyncExecutor.Droppable {
+
+        private final Mailbox mailbox;
+        private final Thread submitter = Thread.currentThread();
+        // Only read and written by the submitting thread.
+        private boolean submitted;
+        private boolean inline;
+
+        Handoff(Mailbox mailbox){
+            this.mailbox = mailbox;
+        }
+        @Override
+        public void run(){
+            if (Thread.currentThread() == submitter && !submitted) {
+                inline = true;
+                return;
+            }
+            mailbox.run();
+        }
+        @Override
+        public void dropped(){
+            mailbox.dropped();
+        }
+        /**
+         * Called by the submitter once the pool has taken the handoff, returns true if the pool ran it on the spot.
+         */
+        boolean ranHere(){
+            submitted = true;
+            return inline;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+/**
+ * A <tt>LoadShedder</tt> slows down or pauses less important repeating {@link org.codemine.schedule.BukkitRun}s while the server is
+ * falling behind, so the ticks it has go to the work that matters.
+ * <p>Repeating tasks are given a {@link Priority} with {@link org.codemine.schedule.BukkitRun#priority(LoadShedder,Priority)} before they
+ * are scheduled. Once a second the shedder reads the tick rate from a {@link org.codemine.schedule.TickRateEstimator} and puts each
+ * priority in one of three states</p>
+ * <ol>
+ *     <li>normal, every run goes ahead</li>
+ *     <li>stretched, only one run in every <tt>factor</tt> goes ahead, the task's period is multiplied by the factor</li>
+ *     <li>skipping, no runs go ahead until the server recovers</li>
+ * </ol>
+ * <p>A priority gets worse as soon as the tick rate drops below its threshold and only gets better once the tick rate is half a tick
+ * per second above it, so tasks do not flip back and forth on a server hovering around a threshold. By default normal tasks are
+ * stretched by 2 below 16 TPS and never skipped, cosmetic tasks are stretched by 4 below 18 TPS and skipped below 12 TPS, and critical
+ * tasks always run. Runs that were held back are counted per priority, as deferred while stretched and skipped while skipping.</p>
+ * <p>Deciding costs a volatile read and a comparison per run, a task that is held back does not run, is not recorded by
+ * {@link org.codemine.schedule.TaskMetrics} and stays scheduled. One shot tasks are never shed.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * rate = new TickRateEstimator();
+ * rate.start(this);
+ * shedder = new LoadShedder(this,rate);
+ * shedder.start();
+ *
+ * new BukkitRun() {
+ *     public void run() {
+ *         spawnParticles();
+ *     }
+ * }.priority(shedder,LoadShedder.Priority.COSMETIC).runTaskTimer(this,1l,1l);
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class LoadShedder {
+
+    private static final int NORMAL = 0;
+    private static final int STRETCHED = 1;
+    private static final int SKIPPING = 2;
+    private static final double RECOVERY = 0.5D;
+    private static final double MAX_THRESHOLD = 19.5D;
+
+    private final Plugin plugin;
+    private final TickRateEstimator rate;
+    private final Policy[] policies = new Policy[Priority.values().length];
+    private final AtomicLongArray deferred = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray skipped = new AtomicLongArray(Priority.values().length);
+    // The period multiplier of each priority read by every run, 1 when running normally and 0 when skipping.
+    private volatile int[] stretch = normal();
+    private BukkitTask driver;
+
+    /**
+     * How important a repeating task is, which decides how early it is shed.
+     */
+    public enum Priority {
+        /**
+         * Always runs, for work such as saving or game logic that must not fall behind.
+         */
+        CRITICAL,
+        /**
+         * Stretched when the server is well behind.
+         */
+        NORMAL,
+        /**
+         * Stretched as soon as the server starts to fall behind and paused when it is far behind, for particles, scoreboards and
+         * anything else players will not miss for a while.
+         */
+        COSMETIC
+    }
+
+    /**
+     * Creates a shedder that reads the tick rate from the estimator, which must be started separately.
+     *
+     * @param plugin the reference to the plugin that owns the shedder
+     * @param rate   the estimator to read the tick rate from
+     * @throws IllegalArgumentException if plugin or rate is null
+     */
+    public LoadShedder(Plugin plugin,TickRateEstimator rate) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (rate == null) {
+            throw new IllegalArgumentException("Rate cannot be null");
+        }
+        this.plugin = plugin;
+        this.rate = rate;
+        policies[Priority.CRITICAL.ordinal()] = new Policy(0.0D,1,0.0D);
+        policies[Priority.NORMAL.ordinal()] = new Policy(16.0D,2,0.0D);
+        policies[Priority.COSMETIC.ordinal()] = new Policy(18.0D,4,12.0D);
+    }
+    /**
+     * Sets when tasks of the priority are shed. A threshold of 0 turns that state off.
+     *
+     * @param priority     the priority to change, critical tasks are never shed
+     * @param stretchBelow the tick rate below which the period is stretched
+     * @param factor       the number the period is multiplied by while stretched
+     * @param skipBelow    the tick rate below which runs are skipped
+     * @throws IllegalArgumentException if priority is null or critical, a threshold is not between 0 and 19.5 or factor is less than 1
+     */
+    public synchronized void setPolicy(Priority priority,double stretchBelow,int factor,double skipBelow) throws IllegalArgumentException{
+        if (priority == null || priority == Priority.CRITICAL) {
+            throw new IllegalArgumentException("Critical tasks are never shed");
+        }
+        if (stretchBelow < 0.0D || stretchBelow > MAX_THRESHOLD || skipBelow < 0.0D || skipBelow > MAX_THRESHOLD) {
+            throw new IllegalArgumentException("Thresholds must be between 0 and " + MAX_THRESHOLD + " TPS");
+        }
+        if (factor < 1) {
+            throw new IllegalArgumentException("Factor must be at least 1");
+        }
+        policies[priority.ordinal()] = new Policy(stretchBelow,factor,skipBelow);
+    }
+    /**
+     * Registers the repeating Bukkit task that checks the tick rate once a second.
+     *
+     * @throws IllegalStateException if the shedder is already running
+     */
+    public synchronized void start() throws IllegalStateException{
+        if (driver != null) {
+            throw new IllegalStateException("Already running as " + driver.getTaskId());
+        }
+        driver = new BukkitRun() {
+
+            @Override
+            public void run(){
+                update(rate.getTicksPerSecond());
+            }
+        }.runTaskTimer(plugin,20L,20L);
+    }
+    /**
+     * Stops checking the tick rate and lets every task run again.
+     */
+    public synchronized void stop(){
+        if (driver != null) {
+            driver.cancel();
+            driver = null;
+        }
+        stretch = normal();
+    }
+    /**
+     * Returns true if the shedder is checking the tick rate.
+     *
+     * @return true if running
+     */
+    public synchronized boolean isRunning(){
+        return driver != null;
+    }
+    /**
+     * Gets the number the period of tasks with the priority is multiplied by right now.
+     *
+     * @param priority the priority
+     * @return the stretch factor, 1 when tasks run normally or are being skipped
+     */
+    public int getStretch(Priority priority){
+        return Math.max(1,stretch[priority.ordinal()]);
+    }
+    /**
+     * Returns true if every run of tasks with the priority is being skipped.
+     *
+     * @param priority the priority
+     * @return true if skipping
+     */
+    public boolean isSkipping(Priority priority){
+        return stretch[priority.ordinal()] == 0;
+    }
+    /**
+     * Gets the number of runs held back while tasks with the priority were stretched.
+     *
+     * @param priority the priority
+     * @return the deferred run count
+     */
+    public long getDeferredCount(Priority priority){
+        return deferred.get(priority.ordinal());
+    }
+    /**
+     * Gets the number of runs dropped while tasks with the priority were skipped.
+     *
+     * @param priority the priority
+     * @return the skipped run count
+     */
+    public long getSkippedCount(Priority priority){
+        return skipped.get(priority.ordinal());
+    }
+    /**
+     * Decides whether a run of a repeating task is held back, given how many runs in a row it has already held back.
+     */
+    boolean shed(Priority priority,int held){
+        final int index = priority.ordinal();
+        final int factor = stretch[index];
+        if (factor == 1) {
+            return false;
+        }
+        if (factor == 0) {
+            skipped.incrementAndGet(index);
+            return true;
+        }
+        if (held + 1 < factor) {
+            deferred.incrementAndGet(index);
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Moves each priority to the state for the tick rate, logging the changes.
+     */
+    synchronized void update(double tps){
+        if (driver == null) {
+            return;
+        }
+        final int[] current = stretch;
+        final int[] next = new int[current.length];
+        boolean changed = false;
+        for (Priority priority : Priority.values()) {
+            final int i = priority.ordinal();
+            final Policy policy = policies[i];
+            final int was = current[i] == 0 ? SKIPPING : current[i] == 1 ? NORMAL : STRETCHED;
+            final int state = state(was,tps,policy);
+            next[i] = state == SKIPPING ? 0 : state == NORMAL ? 1 : policy.factor;
+            if (next[i] != current[i]) {
+                changed = true;
+                final String name = priority.name().toLowerCase(Locale.ROOT);
+                final String tickRate = String.format(Locale.ROOT,"%.1f",tps);
+                if (state == NORMAL) {
+                    plugin.getLogger().log(Level.INFO,"Running " + name + " tasks normally again at " + tickRate + " TPS");
+                } else if (state == STRETCHED) {
+                    plugin.getLogger().log(Level.INFO,"Stretching " + name + " tasks by " + next[i] + " at " + tickRate + " TPS");
+                } else {
+                    plugin.getLogger().log(Level.INFO,"Skipping " + name + " tasks at " + tickRate + " TPS");
+                }
+            }
+        }
+        if (changed) {
+            stretch = next;
+        }
+    }
+    private static int[] normal(){
+        final int[] factors = new int[Priority.values().length];
+        Arrays.fill(factors,1);
+        return factors;
+    }
+    /**
+     * Gets worse straight away, but only gets better once the tick rate is clear of the threshold by the recovery margin. Going back
+     * to normal needs the margin above both thresholds, a policy that skips above its stretch threshold goes straight from skipping to
+     * normal and must not do so right at the skip threshold.
+     */
+    private static int state(int current,double tps,Policy policy){
+        final int target = tps < policy.skipBelow ? SKIPPING : tps < policy.stretchBelow ? STRETCHED : NORMAL;
+        final double normalAt = Math.max(policy.stretchBelow,policy.skipBelow) + RECOVERY;
+        final int recovered = tps >= normalAt ? NORMAL : tps >= policy.skipBelow + RECOVERY ? STRETCHED : SKIPPING;
+        return Math.max(target,Math.min(current,recovered));
+    }
+
+    /**
+     * When the tasks of one priority are shed.
+     */
+    private static final class Policy {
+
+        final double stretchBelow;
+        final int factor;
+        final double skipBelow;
+
+        Policy(double stretchBelow,int factor,double skipBelow){
+            this.stretchBelow = stretchBelow;
+            this.factor = factor;
+            this.skipBelow = skipBelow;
+        }
+    }
+}
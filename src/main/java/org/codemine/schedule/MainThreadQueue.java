@@ -0,0 +1,305 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.logging.Level;
+
+/**
+ * A <tt>MainThreadQueue</tt> hands results from asynchronous code back to the main thread in bulk, drained by one repeating task once a tick.
+ * <p>Scheduling a {@link org.codemine.schedule.BukkitRun} per result registers a task with the scheduler and takes its lock every time,
+ * which adds up when workers deliver thousands of small results a second. Posting to this queue is a single atomic swap onto a linked
+ * list, any number of threads can post without locking and the main thread takes everything off in one pass. Each tick the work
+ * posted before the drain started is run, work posted while draining waits for the next tick so a busy producer can not hold the main
+ * thread. An optional budget limits the time spent each tick, at least one post is always run and the rest carries over.</p>
+ * <p>Posts given a key replace any post with the same key that is still waiting, for results where only the newest value matters such
+ * as the score of a player. The replaced post keeps its place in the queue. Keyed posts are looked up in a concurrent map, posts
+ * without a key never touch it.</p>
+ * <p>The queue depth, the number of merged posts and the time each post waited to be drained are recorded, the waits in a
+ * {@link org.codemine.schedule.TaskStats} histogram.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * results = new MainThreadQueue(this);
+ * results.start();
+ *
+ * // on a worker thread
+ * results.post(player.getUniqueId(),new Runnable() {
+ *     public void run() {
+ *         scoreboard.update(player,score);
+ *     }
+ * });
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class MainThreadQueue {
+
+    private static final AtomicReferenceFieldUpdater<MainThreadQueue,Node> TAIL = AtomicReferenceFieldUpdater.newUpdater(MainThreadQueue.class,Node.class,"tail");
+    private static final AtomicReferenceFieldUpdater<Node,Runnable> WORK = AtomicReferenceFieldUpdater.newUpdater(Node.class,Runnable.class,"work");
+
+    private final Plugin plugin;
+    private final ConcurrentMap<Object,Node> pending = new ConcurrentHashMap<>();
+    private final TaskStats latency = new TaskStats("handoff");
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private volatile Node tail;
+    private volatile long budgetNanos;
+    private volatile long taken;
+    private volatile int lastTickCount;
+    private volatile long lastTickNanos;
+    // Only touched by the draining thread, always the last node taken.
+    private Node head;
+    private BukkitTask driver;
+
+    /**
+     * Creates a queue that runs everything posted each tick. Nothing is run until {@link #start()} is called.
+     *
+     * @param plugin the reference to the plugin that owns the queue
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public MainThreadQueue(Plugin plugin) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        this.plugin = plugin;
+        this.head = new Node(null,null,0L);
+        this.tail = head;
+    }
+    /**
+     * Creates a queue that spends at most the budget running posts each tick. Nothing is run until {@link #start()} is called.
+     *
+     * @param plugin the reference to the plugin that owns the queue
+     * @param budget the amount of time the queue may use each tick
+     * @param unit   the unit of time the budget value relates to
+     * @throws IllegalArgumentException if plugin is null or the budget is less than 1 millisecond
+     */
+    public MainThreadQueue(Plugin plugin,long budget,TimeUnit unit) throws IllegalArgumentException{
+        this(plugin);
+        setBudget(budget,unit);
+    }
+    /**
+     * Registers the repeating Bukkit task that drains the queue.
+     *
+     * @throws IllegalStateException if the queue is already running
+     */
+    public synchronized void start() throws IllegalStateException{
+        if (driver != null) {
+            throw new IllegalStateException("Already running as " + driver.getTaskId());
+        }
+        driver = new BukkitRun() {
+
+            @Override
+            public void run(){
+                drain();
+            }
+        }.runTaskTimer(plugin,1L,1L);
+    }
+    /**
+     * Stops draining the queue. Posts that are still waiting are kept and will run if the queue is started again.
+     */
+    public synchronized void stop(){
+        if (driver != null) {
+            driver.cancel();
+            driver = null;
+        }
+    }
+    /**
+     * Returns true if the queue has been started and not stopped.
+     *
+     * @return true if the draining task is registered
+     */
+    public synchronized boolean isRunning(){
+        return driver != null;
+    }
+    /**
+     * Limits the time spent running posts each tick, takes effect from the next tick.
+     *
+     * @param budget the amount of time the queue may use each tick, 0 to run everything
+     * @param unit   the unit of time the budget value relates to
+     * @throws IllegalArgumentException if the budget is negative or between 0 and 1 millisecond
+     */
+    public void setBudget(long budget,TimeUnit unit) throws IllegalArgumentException{
+        final long millis = unit.toMillis(budget);
+        if (budget < 0L || (budget > 0L && millis < 1L)) {
+            throw new IllegalArgumentException("Budget must be 0 or at least 1 millisecond");
+        }
+        this.budgetNanos = millis * 1000000L;
+    }
+    /**
+     * Gets the time the queue may use each tick.
+     *
+     * @return the budget in milliseconds, 0 if there is none
+     */
+    public long getBudgetMillis(){
+        return budgetNanos / 1000000L;
+    }
+    /**
+     * Queues the work to run on the main thread at the start of the next drain. May be called from any thread.
+     *
+     * @param work the work to run
+     * @throws IllegalArgumentException if work is null
+     */
+    public void post(Runnable work) throws IllegalArgumentException{
+        if (work == null) {
+            throw new IllegalArgumentException("Work cannot be null");
+        }
+        enqueue(new Node(null,work,TaskScheduler.getDefault().nanoTime()));
+    }
+    /**
+     * Queues the work to run on the main thread, replacing the work of a post with the same key that has not run yet. May be called
+     * from any thread.
+     *
+     * @param key  the key the work replaces older posts of
+     * @param work the work to run
+     * @throws IllegalArgumentException if key or work is null
+     */
+    public void post(Object key,Runnable work) throws IllegalArgumentException{
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (work == null) {
+            throw new IllegalArgumentException("Work cannot be null");
+        }
+        for (; ; ) {
+            final Node waiting = pending.get(key);
+            if (waiting != null) {
+                final Runnable old = waiting.work;
+                if (old != null && WORK.compareAndSet(waiting,old,work)) {
+                    merged.incrementAndGet();
+                    return;
+                }
+                // Already taken by the drain, which removes it from the map itself shortly.
+                pending.remove(key,waiting);
+                continue;
+            }
+            final Node node = new Node(key,work,TaskScheduler.getDefault().nanoTime());
+            if (pending.putIfAbsent(key,node) == null) {
+                enqueue(node);
+                return;
+            }
+        }
+    }
+    /**
+     * Gets the number of posts waiting to run.
+     *
+     * @return the queue depth
+     */
+    public long getDepth(){
+        return Math.max(0L,posted.get() - taken);
+    }
+    /**
+     * Gets the number of posts that replaced a waiting post with the same key.
+     *
+     * @return the merged post count
+     */
+    public long getMergedCount(){
+        return merged.get();
+    }
+    /**
+     * Gets the number of posts that have been run.
+     *
+     * @return the completed post count
+     */
+    public long getCompleted(){
+        return taken;
+    }
+    /**
+     * Gets the number of posts that were run during the last tick.
+     *
+     * @return the posts run in the last tick
+     */
+    public int getLastTickCount(){
+        return lastTickCount;
+    }
+    /**
+     * Gets the time spent running posts during the last tick.
+     *
+     * @return the time used in the last tick in nanoseconds
+     */
+    public long getLastTickNanos(){
+        return lastTickNanos;
+    }
+    /**
+     * Gets the time posts waited between being posted and the start of the drain that ran them. A merged post counts from when the
+     * post it replaced was made.
+     *
+     * @return the hand-off latency histogram
+     */
+    public TaskStats getLatencyStats(){
+        return latency;
+    }
+    /**
+     * Swaps the node in as the new tail and links the old tail to it. Until the link is written the drain sees the queue end early
+     * and picks the node up on a later tick.
+     */
+    private void enqueue(Node node){
+        posted.incrementAndGet();
+        final Node previous = TAIL.getAndSet(this,node);
+        previous.next = node;
+    }
+    /**
+     * Runs the posts that were waiting when the drain started, until the budget for this tick is used up.
+     */
+    void drain(){
+        final long start = System.nanoTime();
+        final long budget = budgetNanos;
+        final long now = TaskScheduler.getDefault().nanoTime();
+        long remaining = posted.get() - taken;
+        int count = 0;
+        long clock = start;
+        while (remaining > 0L) {
+            final Node node = head.next;
+            if (node == null) {
+                break;
+            }
+            head = node;
+            remaining--;
+            final Runnable work = WORK.getAndSet(node,null);
+            if (node.key != null) {
+                pending.remove(node.key,node);
+                node.key = null;
+            }
+            taken++;
+            latency.record(now - node.posted,true);
+            try {
+                work.run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING,"Posted task " + TaskMetrics.label(work) + " for " + plugin.getName() + " generated an exception",t);
+            }
+            count++;
+            if (budget > 0L) {
+                clock = System.nanoTime();
+                if (clock - start >= budget) {
+                    break;
+                }
+            }
+        }
+        lastTickCount = count;
+        lastTickNanos = (budget > 0L ? clock : System.nanoTime()) - start;
+    }
+
+    /**
+     * A single post, the work is cleared when it is taken so a later post with the same key can tell it has to queue again.
+     */
+    private static final class Node {
+
+        volatile Node next;
+        volatile Runnable work;
+        Object key;
+        final long posted;
+
+        Node(Object key,Runnable work,long posted){
+            this.key = key;
+            this.work = work;
+            this.posted = posted;
+        }
+    }
+}
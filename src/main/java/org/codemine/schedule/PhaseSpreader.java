@@ -0,0 +1,183 @@
+package org.codemine.schedule;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of which phase of its period every repeating task on a {@link org.codemine.schedule.TimingWheel} runs in, so that
+ * tasks sharing a period can be spread evenly over the ticks of that period.
+ * <p>The phase of a task is its next run tick modulo its period. A new task keeps the phase of its requested delay if that is one of
+ * the least loaded, otherwise it is given a least loaded phase and starts within one period of the delay. When a task leaves, one task
+ * from the most loaded phase is moved into the emptiest phase if the difference between them is more than one. The phases of a period
+ * are indexed by how many tasks they hold, so both cost the same however long the period is. Only periods up to {@link #MAX_PERIOD}
+ * ticks are spread. Everything here runs on the main thread.</p>
+ */
+final class PhaseSpreader {
+
+    /**
+     * The longest period, in ticks, that is spread. Tasks with longer periods keep the delay they were given.
+     */
+    static final int MAX_PERIOD = 1200;
+
+    private final Map<Long,Group> groups = new HashMap<>();
+
+    /**
+     * Returns true if tasks with this period are spread.
+     */
+    static boolean accepts(long period){
+        return period > 1L && period <= MAX_PERIOD;
+    }
+    /**
+     * Picks the phase for a new task and returns the tick of its first run, never earlier than the earliest tick requested.
+     */
+    long assign(WheelTask handle,long earliest){
+        final int period = (int) handle.period;
+        Group group = groups.get(handle.period);
+        if (group == null) {
+            group = new Group(period);
+            groups.put(handle.period,group);
+        }
+        final int start = (int) (earliest % period);
+        final int best = group.counts[start] == group.min ? start : group.levels[group.min];
+        group.add(handle,best);
+        return earliest + ((best - start + period) % period);
+    }
+    /**
+     * Removes a task that has left the wheel and returns the task that should be moved to rebalance its group, with the number of
+     * ticks it should be pushed back by stored in its phase shift, or null if the group is balanced.
+     */
+    WheelTask remove(WheelTask handle){
+        final Group group = groups.get(handle.period);
+        if (group == null || handle.phase < 0) {
+            return null;
+        }
+        group.remove(handle);
+        if (group.size == 0) {
+            groups.remove(handle.period);
+            return null;
+        }
+        if (group.max - group.min <= 1) {
+            return null;
+        }
+        final int min = group.levels[group.min];
+        final int max = group.levels[group.max];
+        final WheelTask moved = group.heads[max].groupNext;
+        group.remove(moved);
+        group.add(moved,min);
+        moved.shift = (min - max + group.period) % group.period;
+        return moved;
+    }
+    /**
+     * Gets a copy of the number of tasks in each phase of the period.
+     */
+    int[] load(long period){
+        final Group group = groups.get(period);
+        return group == null ? new int[(int) Math.max(0L,Math.min(period,MAX_PERIOD))] : group.counts.clone();
+    }
+    /**
+     * Gets the number of spread tasks due on each of the next ticks, starting with the tick after the current one.
+     */
+    int[] distribution(long tick,int ticks){
+        final int[] out = new int[ticks];
+        for (Group group : groups.values()) {
+            for (int t = 0; t < ticks; t++) {
+                out[t] += group.counts[(int) ((tick + 1L + t) % group.period)];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The tasks of one period. Besides the tasks in each phase, the phases holding the same number of tasks are linked into one list
+     * per count, a phase moves to the neighbouring list whenever a task joins or leaves it so the lowest and highest counts in use
+     * are always known.
+     */
+    private static final class Group {
+
+        final int period;
+        final int[] counts;
+        final WheelTask[] heads;
+        final int[] next;
+        final int[] prev;
+        // The first phase holding each number of tasks, or -1.
+        int[] levels;
+        int min;
+        int max;
+        int size;
+
+        Group(int period){
+            this.period = period;
+            this.counts = new int[period];
+            this.heads = new WheelTask[period];
+            this.next = new int[period];
+            this.prev = new int[period];
+            this.levels = new int[4];
+            Arrays.fill(levels,-1);
+            for (int phase = period - 1; phase >= 0; phase--) {
+                link(phase,0);
+            }
+        }
+        void add(WheelTask handle,int phase){
+            WheelTask head = heads[phase];
+            if (head == null) {
+                head = new WheelTask(handle.wheel);
+                head.groupPrev = head;
+                head.groupNext = head;
+                heads[phase] = head;
+            }
+            handle.phase = phase;
+            handle.groupPrev = head.groupPrev;
+            handle.groupNext = head;
+            head.groupPrev.groupNext = handle;
+            head.groupPrev = handle;
+            final int count = counts[phase]++;
+            unlink(phase,count);
+            link(phase,count + 1);
+            max = Math.max(max,count + 1);
+            if (count == min && levels[count] == -1) {
+                min = count + 1;
+            }
+            size++;
+        }
+        void remove(WheelTask handle){
+            handle.groupPrev.groupNext = handle.groupNext;
+            handle.groupNext.groupPrev = handle.groupPrev;
+            handle.groupPrev = null;
+            handle.groupNext = null;
+            final int phase = handle.phase;
+            final int count = counts[phase]--;
+            unlink(phase,count);
+            link(phase,count - 1);
+            min = Math.min(min,count - 1);
+            if (count == max && levels[count] == -1) {
+                max = count - 1;
+            }
+            handle.phase = -1;
+            size--;
+        }
+        private void link(int phase,int count){
+            if (count == levels.length) {
+                levels = Arrays.copyOf(levels,count * 2);
+                Arrays.fill(levels,count,levels.length,-1);
+            }
+            final int first = levels[count];
+            next[phase] = first;
+            prev[phase] = -1;
+            if (first != -1) {
+                prev[first] = phase;
+            }
+            levels[count] = phase;
+        }
+        private void unlink(int phase,int count){
+            if (prev[phase] == -1) {
+                levels[count] = next[phase];
+            } else {
+                next[prev[phase]] = next[phase];
+            }
+            if (next[phase] != -1) {
+                prev[next[phase]] = prev[phase];
+            }
+        }
+    }
+}
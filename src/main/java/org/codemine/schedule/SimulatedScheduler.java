@@ -0,0 +1,448 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A <tt>SimulatedScheduler</tt> is a {@link org.codemine.schedule.TaskScheduler} that runs without a server, on a virtual clock
+ * that only moves when {@link #tick()} or one of the advance methods is called.
+ * <p>Ticks are run back to back as fast as the CPU allows, so a day of scheduling, 1,728,000 ticks, can be replayed in seconds
+ * while {@link #nanoTime()} and {@link #currentTimeMillis()} report the time the server would have seen. The thread that calls
+ * {@link #tick()} is the main thread. Tasks are ordered and run the way Bukkit runs them: tasks scheduled during a tick are picked
+ * up at the start of the next one and a delay of 0 runs on the next tick.</p>
+ * <p>Asynchronous tasks run on the executor given to the constructor, by default a single daemon thread so runs are repeatable.
+ * Each tick waits for the asynchronous runs it started unless {@link #setAwaitAsync(boolean)} is disabled, which must be done if
+ * asynchronous tasks block waiting for the main thread.</p>
+ * <p>The real time every tick and every dispatch takes is recorded in {@link #getTickStats()} and {@link #getLatencyStats()}, and
+ * with {@link #startTrace(int)} every schedule, run and cancel is recorded as a {@link org.codemine.schedule.TraceEvent}.</p>
+ * <hr>
+ * An example usage can be seen below. Two hours of a plugin's scheduling are run with the server lagging at 10 TPS.
+ * <tt>
+ * <pre>
+ * {@code
+ * SimulatedScheduler simulated = new SimulatedScheduler();
+ * simulated.setTickLength(100l,TimeUnit.MILLISECONDS);
+ * TaskScheduler.setDefault(simulated);
+ * plugin.scheduleEverything();
+ * simulated.startTrace(100000);
+ * simulated.advance(2l,TimeUnit.HOURS);
+ * List<TraceEvent> trace = simulated.stopTrace();
+ * long p99 = simulated.getTickStats().getPercentileNanos(0.99d);
+ * TaskScheduler.setDefault(null);
+ * simulated.shutdown();
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class SimulatedScheduler extends TaskScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(SimulatedScheduler.class.getName());
+
+    private final Executor pool;
+    private final ExecutorService ownPool;
+    private final PriorityQueue<SimulatedTask> queue = new PriorityQueue<>(64,new Comparator<SimulatedTask>() {
+
+        public int compare(SimulatedTask a,SimulatedTask b){
+            return a.next < b.next ? -1 : a.next > b.next ? 1 : Integer.compare(a.id,b.id);
+        }
+    });
+    private final ConcurrentLinkedQueue<SimulatedTask> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final TaskStats tickStats = new TaskStats("tick");
+    private final TaskStats latencyStats = new TaskStats("dispatch");
+    private final Object traceLock = new Object();
+    private final long epochMillis = System.currentTimeMillis();
+    private volatile Thread primary = Thread.currentThread();
+    private volatile long tick;
+    private volatile long clockNanos;
+    private volatile long tickNanos = TickRateEstimator.NOMINAL_TICK_NANOS;
+    private volatile boolean awaitAsync = true;
+    private volatile List<TraceEvent> trace;
+    private int traceLimit;
+    private long traceDropped;
+
+    /**
+     * Creates a scheduler that runs asynchronous tasks on a single daemon thread of its own, stopped by {@link #shutdown()}.
+     */
+    public SimulatedScheduler(){
+        this.ownPool = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r){
+                final Thread thread = new Thread(r,"simulated-async");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.pool = ownPool;
+    }
+    /**
+     * Creates a scheduler that runs asynchronous tasks on the executor.
+     *
+     * @param pool the executor asynchronous tasks run on
+     * @throws IllegalArgumentException if pool is null
+     */
+    public SimulatedScheduler(Executor pool) throws IllegalArgumentException{
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool cannot be null");
+        }
+        this.pool = pool;
+        this.ownPool = null;
+    }
+    @Override
+    public BukkitTask runTask(Plugin plugin,Runnable task){
+        return schedule(plugin,task,true,0L,0L);
+    }
+    @Override
+    public BukkitTask runTaskLater(Plugin plugin,Runnable task,long delay){
+        return schedule(plugin,task,true,delay,0L);
+    }
+    @Override
+    public BukkitTask runTaskTimer(Plugin plugin,Runnable task,long delay,long period){
+        return schedule(plugin,task,true,delay,Math.max(1L,period));
+    }
+    @Override
+    public BukkitTask runTaskAsynchronously(Plugin plugin,Runnable task){
+        return schedule(plugin,task,false,0L,0L);
+    }
+    @Override
+    public BukkitTask runTaskLaterAsynchronously(Plugin plugin,Runnable task,long delay){
+        return schedule(plugin,task,false,delay,0L);
+    }
+    @Override
+    public BukkitTask runTaskTimerAsynchronously(Plugin plugin,Runnable task,long delay,long period){
+        return schedule(plugin,task,false,delay,Math.max(1L,period));
+    }
+    @Override
+    public boolean isPrimaryThread(){
+        return Thread.currentThread() == primary;
+    }
+    /**
+     * Gets the virtual clock, which moves forward by the tick length every tick.
+     *
+     * @return the virtual time in nanoseconds
+     */
+    @Override
+    public long nanoTime(){
+        return clockNanos;
+    }
+    /**
+     * Gets the virtual wall clock, which starts at the real time the scheduler was created.
+     *
+     * @return the virtual time in milliseconds since the epoch
+     */
+    @Override
+    public long currentTimeMillis(){
+        return epochMillis + clockNanos / 1000000L;
+    }
+    /**
+     * Sets how far the virtual clock moves each tick, longer than 50 milliseconds to simulate a lagging server.
+     *
+     * @param length the length of a tick
+     * @param unit   the unit of time the length relates to
+     * @throws IllegalArgumentException if the length is less than 1 millisecond
+     */
+    public void setTickLength(long length,TimeUnit unit) throws IllegalArgumentException{
+        final long millis = unit.toMillis(length);
+        if (millis < 1L) {
+            throw new IllegalArgumentException("Tick length must be at least 1 millisecond");
+        }
+        this.tickNanos = millis * 1000000L;
+    }
+    /**
+     * Sets whether each tick waits for the asynchronous runs it started before returning, enabled by default.
+     *
+     * @param await true to wait
+     */
+    public void setAwaitAsync(boolean await){
+        this.awaitAsync = await;
+    }
+    /**
+     * Runs one tick: moves the virtual clock forward, runs every sync task that is due and hands every asynchronous task that is due
+     * to the pool. The calling thread becomes the main thread.
+     */
+    public void tick(){
+        primary = Thread.currentThread();
+        final long start = System.nanoTime();
+        final long now = ++tick;
+        clockNanos += tickNanos;
+        SimulatedTask task;
+        while ((task = incoming.poll()) != null) {
+            queue.add(task);
+        }
+        while ((task = queue.peek()) != null && task.next <= now) {
+            queue.poll();
+            if (task.cancelled) {
+                continue;
+            }
+            if (task.sync) {
+                run(task,start);
+            } else {
+                dispatch(task,start);
+            }
+            if (task.period > 0L && !task.cancelled) {
+                task.next = now + task.period;
+                queue.add(task);
+            }
+        }
+        if (awaitAsync) {
+            awaitAsync();
+        }
+        tickStats.record(System.nanoTime() - start,true);
+    }
+    /**
+     * Runs a number of ticks back to back.
+     *
+     * @param ticks the number of ticks to run
+     */
+    public void advance(long ticks){
+        for (long i = 0L; i < ticks; i++) {
+            tick();
+        }
+    }
+    /**
+     * Runs ticks back to back until the virtual clock has moved forward by at least the duration.
+     *
+     * @param duration the amount of virtual time to run
+     * @param unit     the unit of time the duration relates to
+     */
+    public void advance(long duration,TimeUnit unit){
+        final long millis = unit.toMillis(duration);
+        final long end = clockNanos + (millis > Long.MAX_VALUE / 2000000L ? Long.MAX_VALUE / 2L : millis * 1000000L);
+        while (clockNanos - end < 0L) {
+            tick();
+        }
+    }
+    /**
+     * Waits until every asynchronous run handed to the pool so far has finished.
+     */
+    public void awaitAsync(){
+        synchronized (outstanding) {
+            while (outstanding.get() > 0) {
+                try {
+                    outstanding.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    /**
+     * Gets the number of ticks run so far.
+     *
+     * @return the current tick
+     */
+    public long getCurrentTick(){
+        return tick;
+    }
+    /**
+     * Gets the number of tasks waiting to run, including cancelled tasks that have not been reached yet. Only exact on the main thread.
+     *
+     * @return the number of pending tasks
+     */
+    public int getPending(){
+        return queue.size() + incoming.size();
+    }
+    /**
+     * Gets the number of task runs so far, including those that failed.
+     *
+     * @return the number of runs
+     */
+    public long getRunCount(){
+        return runs.get();
+    }
+    /**
+     * Gets the number of task runs that threw an exception.
+     *
+     * @return the number of failures
+     */
+    public long getFailureCount(){
+        return failures.get();
+    }
+    /**
+     * Gets the real time every tick took, including waiting for asynchronous runs if enabled.
+     *
+     * @return the tick cost histogram
+     */
+    public TaskStats getTickStats(){
+        return tickStats;
+    }
+    /**
+     * Gets the real time between the start of the tick a task was due on and the task starting to run.
+     *
+     * @return the dispatch latency histogram
+     */
+    public TaskStats getLatencyStats(){
+        return latencyStats;
+    }
+    /**
+     * Starts recording a trace, replacing any trace being recorded.
+     *
+     * @param capacity the largest number of events to keep, later events are counted but dropped
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public void startTrace(int capacity) throws IllegalArgumentException{
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        synchronized (traceLock) {
+            traceLimit = capacity;
+            traceDropped = 0L;
+            trace = new ArrayList<>(Math.min(capacity,1024));
+        }
+    }
+    /**
+     * Stops recording and returns the trace.
+     *
+     * @return the events recorded in order, empty if no trace was being recorded
+     */
+    public List<TraceEvent> stopTrace(){
+        synchronized (traceLock) {
+            final List<TraceEvent> events = trace;
+            trace = null;
+            return events == null ? new ArrayList<TraceEvent>() : events;
+        }
+    }
+    /**
+     * Gets the number of events dropped from the current or last trace because it was full.
+     *
+     * @return the number of dropped events
+     */
+    public long getTraceDropped(){
+        synchronized (traceLock) {
+            return traceDropped;
+        }
+    }
+    /**
+     * Stops the pool created by the no argument constructor, an executor given to the constructor is left to its owner.
+     */
+    public void shutdown(){
+        if (ownPool != null) {
+            ownPool.shutdown();
+        }
+    }
+    private BukkitTask schedule(Plugin plugin,Runnable task,boolean sync,long delay,long period){
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        final SimulatedTask scheduled = new SimulatedTask(ids.incrementAndGet(),plugin,task,sync,period);
+        scheduled.next = tick + Math.max(0L,delay);
+        trace(TraceEvent.Kind.SCHEDULED,scheduled,0L,0L);
+        incoming.add(scheduled);
+        return scheduled;
+    }
+    private void dispatch(final SimulatedTask task,final long due){
+        outstanding.incrementAndGet();
+        try {
+            pool.execute(new Runnable() {
+
+                public void run(){
+                    try {
+                        SimulatedScheduler.this.run(task,due);
+                    } finally {
+                        if (outstanding.decrementAndGet() == 0) {
+                            synchronized (outstanding) {
+                                outstanding.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            outstanding.decrementAndGet();
+            failures.incrementAndGet();
+            trace(TraceEvent.Kind.FAILED,task,0L,0L);
+            LOGGER.log(Level.WARNING,"Async task #" + task.id + " for " + task.owner.getName() + " was rejected by the pool",e);
+        }
+    }
+    private void run(SimulatedTask task,long due){
+        final long start = System.nanoTime();
+        latencyStats.record(start - due,task.sync);
+        boolean failed = false;
+        try {
+            task.task.run();
+        } catch (Throwable t) {
+            failed = true;
+            failures.incrementAndGet();
+            LOGGER.log(Level.WARNING,"Task #" + task.id + " for " + task.owner.getName() + " generated an exception",t);
+        }
+        runs.incrementAndGet();
+        trace(failed ? TraceEvent.Kind.FAILED : TraceEvent.Kind.RAN,task,start - due,System.nanoTime() - start);
+    }
+    private void trace(TraceEvent.Kind kind,SimulatedTask task,long latency,long duration){
+        if (trace == null) {
+            return;
+        }
+        synchronized (traceLock) {
+            final List<TraceEvent> events = trace;
+            if (events == null) {
+                return;
+            }
+            if (events.size() >= traceLimit) {
+                traceDropped++;
+                return;
+            }
+            events.add(new TraceEvent(kind,tick,task.id,TaskMetrics.label(task.task),task.sync,latency,duration));
+        }
+    }
+
+    private final class SimulatedTask implements BukkitTask {
+
+        final int id;
+        final Plugin owner;
+        final Runnable task;
+        final boolean sync;
+        final long period;
+        long next;
+        volatile boolean cancelled;
+
+        SimulatedTask(int id,Plugin owner,Runnable task,boolean sync,long period){
+            this.id = id;
+            this.owner = owner;
+            this.task = task;
+            this.sync = sync;
+            this.period = period;
+        }
+        @Override
+        public int getTaskId(){
+            return id;
+        }
+        @Override
+        public Plugin getOwner(){
+            return owner;
+        }
+        @Override
+        public boolean isSync(){
+            return sync;
+        }
+        @Override
+        public void cancel(){
+            if (!cancelled) {
+                cancelled = true;
+                trace(TraceEvent.Kind.CANCELLED,this,0L,0L);
+            }
+        }
+    }
+}
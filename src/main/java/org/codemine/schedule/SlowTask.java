@@ -0,0 +1,81 @@
+package org.codemine.schedule;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A <tt>SlowTask</tt> is the report a {@link org.codemine.schedule.Watchdog} makes about a main thread task that ran for longer than
+ * its threshold.
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class SlowTask {
+
+    private final String label;
+    private final String plugin;
+    private final long durationNanos;
+    private final int samples;
+    private final List<String> hotFrames;
+
+    SlowTask(String label,String plugin,long durationNanos,int samples,List<String> hotFrames){
+        this.label = label;
+        this.plugin = plugin;
+        this.durationNanos = durationNanos;
+        this.samples = samples;
+        this.hotFrames = Collections.unmodifiableList(hotFrames);
+    }
+    /**
+     * Gets the label of the task, the class name of the {@link org.codemine.schedule.BukkitRun} if it is one.
+     *
+     * @return the task label
+     */
+    public String getLabel(){
+        return label;
+    }
+    /**
+     * Gets the name of the plugin that scheduled the task.
+     *
+     * @return the plugin name, or null if it is not known
+     */
+    public String getPlugin(){
+        return plugin;
+    }
+    /**
+     * Gets how long the task ran, accurate to within the watchdog's sample interval.
+     *
+     * @param unit the unit of time to return
+     * @return the duration
+     */
+    public long getDuration(TimeUnit unit){
+        return unit.convert(durationNanos / 1000000L,TimeUnit.MILLISECONDS);
+    }
+    /**
+     * Gets the number of stack samples taken while the task was over its threshold.
+     *
+     * @return the number of samples
+     */
+    public int getSampleCount(){
+        return samples;
+    }
+    /**
+     * Gets the frames the task was most often found in, busiest first, each with the share of samples it was seen in.
+     *
+     * @return the hot frames
+     */
+    public List<String> getHotFrames(){
+        return hotFrames;
+    }
+    @Override
+    public String toString(){
+        final StringBuilder builder = new StringBuilder();
+        builder.append("Task ").append(label);
+        if (plugin != null) {
+            builder.append(" for ").append(plugin);
+        }
+        builder.append(" ran for ").append(durationNanos / 1000000L).append("ms on the main thread, ").append(samples).append(" samples");
+        for (String frame : hotFrames) {
+            builder.append("\n    ").append(frame);
+        }
+        return builder.toString();
+    }
+}
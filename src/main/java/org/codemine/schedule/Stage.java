@@ -0,0 +1,23 @@
+package org.codemine.schedule;
+
+/**
+ * A <tt>Stage</tt> is a single step in a chain of {@link org.codemine.schedule.TaskFuture}s.
+ * <p>It receives the value produced by the previous step and returns the value passed to the next one. Which thread it runs on is
+ * decided by the method it was attached with, {@link org.codemine.schedule.TaskFuture#thenSync(Stage)} or
+ * {@link org.codemine.schedule.TaskFuture#thenAsync(Stage)}.</p>
+ *
+ * @param <I> the type of value the stage accepts
+ * @param <O> the type of value the stage produces
+ * @version 1.0-SNAPSHOT
+ */
+public interface Stage<I, O> {
+
+    /**
+     * Applies this stage to the value produced by the previous stage.
+     *
+     * @param value the value produced by the previous stage
+     * @return the value to pass on to the next stage
+     * @throws Exception if the stage fails, the exception completes the chain exceptionally
+     */
+    O apply(I value) throws Exception;
+}
@@ -0,0 +1,104 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Collects work posted from other threads and runs it all on the main thread in one task.
+ * <p>At most one Bukkit task is pending per plugin at any time, everything posted before it runs is drained by that single task. Work
+ * posted while it is draining waits for the next tick, so producers that keep posting can not hold the main thread.</p>
+ */
+final class SyncDrain implements Runnable {
+
+    private static final ConcurrentMap<Plugin,SyncDrain> DRAINS = new ConcurrentHashMap<>();
+
+    private final Plugin plugin;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Counted after the work is added, so a drain never expects more than the queue holds.
+    private final AtomicInteger size = new AtomicInteger();
+
+    private SyncDrain(Plugin plugin){
+        this.plugin = plugin;
+    }
+    /**
+     * Gets the shared drain for the specified plugin.
+     */
+    static SyncDrain of(Plugin plugin){
+        SyncDrain drain = DRAINS.get(plugin);
+        if (drain == null) {
+            final SyncDrain created = new SyncDrain(plugin);
+            drain = DRAINS.putIfAbsent(plugin,created);
+            if (drain == null) {
+                drain = created;
+            }
+        }
+        return drain;
+    }
+    /**
+     * Queues the work to run on the main thread, scheduling the drain if it is not already pending. If the scheduler refuses the
+     * drain, such as when the plugin has been disabled, the work is taken back out and the exception is passed on.
+     */
+    void post(Runnable work){
+        queue.add(work);
+        size.incrementAndGet();
+        if (scheduled.compareAndSet(false,true)) {
+            try {
+                TaskScheduler.getDefault().runTask(plugin,this);
+            } catch (RuntimeException e) {
+                if (queue.remove(work)) {
+                    size.decrementAndGet();
+                }
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+    /**
+     * Runs the work that was queued when the drain started, anything posted meanwhile gets a drain of its own on the next tick.
+     */
+    @Override
+    public void run(){
+        final int count = size.get();
+        for (int i = 0; i < count; i++) {
+            final Runnable work = queue.poll();
+            if (work == null) {
+                break;
+            }
+            size.decrementAndGet();
+            try {
+                work.run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING,"Continuation for " + plugin.getName() + " generated an exception",t);
+            }
+        }
+        scheduled.set(false);
+        if (size.get() > 0 && scheduled.compareAndSet(false,true)) {
+            try {
+                TaskScheduler.getDefault().runTask(plugin,this);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                drop(e);
+            }
+        }
+    }
+    /**
+     * Gives up on everything still queued because the drain can not be scheduled again, work that can be told so is.
+     */
+    private void drop(RuntimeException cause){
+        plugin.getLogger().log(Level.WARNING,"Could not schedule the continuations of " + plugin.getName(),cause);
+        Runnable work;
+        while ((work = queue.poll()) != null) {
+            size.decrementAndGet();
+            if (work instanceof AsyncExecutor.Droppable) {
+                ((AsyncExecutor.Droppable) work).dropped();
+            }
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * A <tt>TaskFuture</tt> is the result of work scheduled on either the main thread or the asynchronous scheduler, to which further
+ * stages can be chained.
+ * <p>Moving a value from a worker thread back to the main thread normally means creating and scheduling another {@link org.codemine.schedule.BukkitRun}
+ * for every hop. A <tt>TaskFuture</tt> keeps the hops to a minimum:</p>
+ * <ol>
+ *     <li>If a stage is already on the thread the next stage needs, the value is passed straight along without scheduling anything.</li>
+ *     <li>Every main thread continuation completed off the main thread during a tick is batched into a single Bukkit task per plugin.</li>
+ * </ol>
+ * <p>If a stage throws, the stages after it are skipped and the exception is passed along to the end of the chain where it can be
+ * handled with {@link #whenComplete(Completion)} or is thrown from {@link #get()} wrapped in an {@link java.util.concurrent.ExecutionException}.</p>
+ * <hr>
+ * An example usage can be seen below. This loads data asynchronously, applies it on the main thread and saves it asynchronously.
+ * <tt>
+ * <pre>
+ * {@code
+ * TaskFuture.supplyAsync(this,new Callable<PlayerData>() {
+ *     public PlayerData call() throws Exception {
+ *         return storage.load(uuid);
+ *     }
+ * }).thenSync(new Stage<PlayerData,PlayerData>() {
+ *     public PlayerData apply(PlayerData data) {
+ *         data.applyTo(Bukkit.getPlayer(uuid));
+ *         return data;
+ *     }
+ * }).thenAsync(new Stage<PlayerData,Void>() {
+ *     public Void apply(PlayerData data) throws Exception {
+ *         storage.save(data);
+ *         return null;
+ *     }
+ * });
+ * }
+ * </pre></tt>
+ * <p><b>Calling {@link #get()} on the main thread for a future that needs the main thread to complete will never return.</b></p>
+ *
+ * @param <T> the type of value produced
+ * @version 1.0-SNAPSHOT
+ */
+public class TaskFuture<T> implements Future<T> {
+
+    private static final Object NULL = new Object();
+
+    private final Plugin plugin;
+    private volatile Object result;
+    private List<Continuation> continuations;
+
+    /**
+     * Creates a new incomplete future, it is completed with {@link #complete(Object)} or {@link #fail(Throwable)}.
+     *
+     * @param plugin the reference to the plugin that owns the work
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public TaskFuture(Plugin plugin) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        this.plugin = plugin;
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Runs the task asynchronously and returns a future of its result.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task that produces the value
+     * @param <T>    the type of value produced
+     * @return a future completed with the value the task returns
+     * @throws IllegalArgumentException if plugin or task is null
+     */
+    public static <T> TaskFuture<T> supplyAsync(Plugin plugin,Callable<? extends T> task) throws IllegalArgumentException{
+        return supply(plugin,task,true);
+    }
+    /**
+     * Runs the task on the main thread and returns a future of its result. If called on the main thread the task is run immediately.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task that produces the value
+     * @param <T>    the type of value produced
+     * @return a future completed with the value the task returns
+     * @throws IllegalArgumentException if plugin or task is null
+     */
+    public static <T> TaskFuture<T> supplySync(Plugin plugin,Callable<? extends T> task) throws IllegalArgumentException{
+        return supply(plugin,task,false);
+    }
+    /**
+     * Returns a future that is already completed with the value.
+     *
+     * @param plugin the reference to the plugin that owns the work
+     * @param value  the value of the future
+     * @param <T>    the type of value
+     * @return a completed future
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public static <T> TaskFuture<T> completed(Plugin plugin,T value) throws IllegalArgumentException{
+        final TaskFuture<T> future = new TaskFuture<>(plugin);
+        future.complete(value);
+        return future;
+    }
+    private static <T> TaskFuture<T> supply(Plugin plugin,final Callable<? extends T> task,boolean async){
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        final TaskFuture<T> future = new TaskFuture<>(plugin);
+        future.hop(new Step(future) {
+
+            public void run(){
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Throwable t) {
+                    future.fail(t);
+                }
+            }
+        },async);
+        return future;
+    }
+    /**
+     * Chains a stage that runs on the main thread once this future completes successfully.
+     *
+     * @param stage the stage to apply to the value of this future
+     * @param <R>   the type of value the stage produces
+     * @return a future of the value produced by the stage
+     * @throws IllegalArgumentException if stage is null
+     */
+    public <R> TaskFuture<R> thenSync(Stage<? super T,? extends R> stage) throws IllegalArgumentException{
+        return then(stage,false);
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Chains a stage that runs asynchronously once this future completes successfully.
+     *
+     * @param stage the stage to apply to the value of this future
+     * @param <R>   the type of value the stage produces
+     * @return a future of the value produced by the stage
+     * @throws IllegalArgumentException if stage is null
+     */
+    public <R> TaskFuture<R> thenAsync(Stage<? super T,? extends R> stage) throws IllegalArgumentException{
+        return then(stage,true);
+    }
+    /**
+     * Registers a callback that runs on the main thread once this future completes, successfully or not.
+     *
+     * @param completion the callback to run
+     * @return this future
+     * @throws IllegalArgumentException if completion is null
+     */
+    public TaskFuture<T> whenComplete(final Completion<? super T> completion) throws IllegalArgumentException{
+        if (completion == null) {
+            throw new IllegalArgumentException("Completion cannot be null");
+        }
+        listen(new Runnable() {
+
+            public void run(){
+                final Object r = result;
+                if (r instanceof Failure) {
+                    completion.complete(null,((Failure) r).cause);
+                } else {
+                    completion.complete(TaskFuture.<T>value(r),null);
+                }
+            }
+        },false);
+        return this;
+    }
+    private <R> TaskFuture<R> then(final Stage<? super T,? extends R> stage,boolean async){
+        if (stage == null) {
+            throw new IllegalArgumentException("Stage cannot be null");
+        }
+        final TaskFuture<R> next = new TaskFuture<>(plugin);
+        listen(new Step(next) {
+
+            public void run(){
+                if (next.isDone()) {
+                    return;
+                }
+                final Object r = result;
+                if (r instanceof Failure) {
+                    next.fail(((Failure) r).cause);
+                    return;
+                }
+                try {
+                    next.complete(stage.apply(TaskFuture.<T>value(r)));
+                } catch (Throwable t) {
+                    next.fail(t);
+                }
+            }
+        },async);
+        return next;
+    }
+    /**
+     * Completes this future with the value, if it has not already completed.
+     *
+     * @param value the value of the future
+     * @return true if this call completed the future
+     */
+    public boolean complete(T value){
+        return finish(value == null ? NULL : value);
+    }
+    /**
+     * Completes this future exceptionally, if it has not already completed.
+     *
+     * @param cause the reason the work failed
+     * @return true if this call completed the future
+     */
+    public boolean fail(Throwable cause){
+        return finish(new Failure(cause));
+    }
+    /**
+     * Attempts to cancel the work. Stages that have not started yet will not run, stages that are running are not interrupted.
+     *
+     * @param mayInterruptIfRunning ignored, running stages are never interrupted
+     * @return true if this call cancelled the future
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning){
+        return fail(new CancellationException());
+    }
+    @Override
+    public boolean isCancelled(){
+        final Object r = result;
+        return r instanceof Failure && ((Failure) r).cause instanceof CancellationException;
+    }
+    @Override
+    public boolean isDone(){
+        return result != null;
+    }
+    /**
+     * Waits if necessary for the work to complete and returns its value.
+     *
+     * @return the value of the future
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws ExecutionException   if a stage threw an exception
+     */
+    @Override
+    public T get() throws InterruptedException, ExecutionException{
+        synchronized (this) {
+            while (result == null) {
+                wait();
+            }
+        }
+        return report(result);
+    }
+    /**
+     * Waits if necessary for at most the given time for the work to complete and returns its value.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout argument
+     * @return the value of the future
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws ExecutionException   if a stage threw an exception
+     * @throws TimeoutException     if the wait timed out
+     */
+    @Override
+    public T get(long timeout,java.util.concurrent.TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException{
+        final long end = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (result == null) {
+                final long remaining = end - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException();
+                }
+                java.util.concurrent.TimeUnit.NANOSECONDS.timedWait(this,remaining);
+            }
+        }
+        return report(result);
+    }
+    private boolean finish(Object value){
+        final List<Continuation> pending;
+        synchronized (this) {
+            if (result != null) {
+                return false;
+            }
+            result = value;
+            pending = continuations;
+            continuations = null;
+            notifyAll();
+        }
+        if (pending != null) {
+            for (Continuation continuation : pending) {
+                handOver(continuation.work,continuation.async);
+            }
+        }
+        return true;
+    }
+    private void listen(Runnable work,boolean async){
+        synchronized (this) {
+            if (result == null) {
+                if (continuations == null) {
+                    continuations = new ArrayList<>(2);
+                }
+                continuations.add(new Continuation(work,async));
+                return;
+            }
+        }
+        handOver(work,async);
+    }
+    /**
+     * Hops the work to its thread. If it can not be handed over, such as after the plugin was disabled, the future the work
+     * would have completed fails instead so nothing waits on it forever, and the continuations after it still run.
+     */
+    private void handOver(Runnable work,boolean async){
+        try {
+            hop(work,async);
+        } catch (RuntimeException e) {
+            if (work instanceof Step) {
+                ((Step) work).target.fail(e);
+            } else {
+                plugin.getLogger().log(Level.WARNING,"Could not run a continuation for " + plugin.getName(),e);
+            }
+        }
+    }
+    /**
+     * Runs the work on the right thread, directly if the current thread already is that thread. Asynchronous work the
+     * executor rejects is never run on the current thread, which may be the main thread, its future fails instead.
+     */
+    private void hop(Runnable work,boolean async){
+        final boolean primary = TaskScheduler.getDefault().isPrimaryThread();
+        if (async == primary) {
+            if (async) {
+                try {
+                    AsyncExecutor.dispatch(plugin,work);
+                } catch (RejectedExecutionException e) {
+                    if (!(work instanceof Step)) {
+                        throw e;
+                    }
+                    ((Step) work).target.fail(e);
+                }
+            } else {
+                SyncDrain.of(plugin).post(work);
+            }
+        } else {
+            runInline(work);
+        }
+    }
+    /**
+     * Runs a continuation on the current thread, an exception from it must not stop the continuations after it from running.
+     */
+    private void runInline(Runnable work){
+        try {
+            work.run();
+        } catch (Throwable t) {
+            plugin.getLogger().log(Level.WARNING,"Continuation for " + plugin.getName() + " generated an exception",t);
+        }
+    }
+    @SuppressWarnings("unchecked")
+    private static <T> T value(Object r){
+        return r == NULL ? null : (T) r;
+    }
+    private static <T> T report(Object r) throws ExecutionException{
+        if (r instanceof Failure) {
+            final Throwable cause = ((Failure) r).cause;
+            if (cause instanceof CancellationException) {
+                throw (CancellationException) cause;
+            }
+            throw new ExecutionException(cause);
+        }
+        return value(r);
+    }
+
+    /**
+     * A <tt>Completion</tt> is notified on the main thread when a {@link org.codemine.schedule.TaskFuture} completes.
+     *
+     * @param <T> the type of value produced
+     */
+    public interface Completion<T> {
+
+        /**
+         * Called once the future has completed.
+         *
+         * @param value the value of the future, null if it failed
+         * @param error the reason the future failed, null if it succeeded
+         */
+        void complete(T value,Throwable error);
+    }
+
+    private static final class Continuation {
+
+        final Runnable work;
+        final boolean async;
+
+        Continuation(Runnable work,boolean async){
+            this.work = work;
+            this.async = async;
+        }
+    }
+
+    /**
+     * Work that completes a future, the future fails if the work is dropped or can not be handed over so nothing waits on it forever.
+     */
+    private abstract static class Step implements Runnable, AsyncExecutor.Droppable {
+
+        final TaskFuture<?> target;
+
+        Step(TaskFuture<?> target){
+            this.target = target;
+        }
+        @Override
+        public void dropped(){
+            target.fail(new RejectedExecutionException("Dropped by the async executor"));
+        }
+    }
+
+    private static final class Failure {
+
+        final Throwable cause;
+
+        Failure(Throwable cause){
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.codemine.schedule;
+
+/**
+ * The tasks carrying one tag in {@link org.codemine.schedule.TaskTags}, a linear probing table from task id to task.
+ * <p>Ids are kept in a primitive array beside the tasks, a null task marks an empty slot, so adding and removing allocate nothing
+ * and nothing is boxed. A group is marked dead once it empties and is dropped from the registry, a task being tagged at the same
+ * time sees the mark and creates a new group instead.</p>
+ */
+final class TaskGroup {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] ids = new int[MIN_CAPACITY];
+    private BukkitRun[] runs = new BukkitRun[MIN_CAPACITY];
+    private int size;
+    private boolean dead;
+
+    /**
+     * Adds the task, returns false if the group is dead and the task must be added to a new one.
+     */
+    synchronized boolean add(int id,BukkitRun run){
+        if (dead) {
+            return false;
+        }
+        if ((size + 1) * 4 > runs.length * 3) {
+            resize(runs.length << 1);
+        }
+        final int mask = runs.length - 1;
+        int i = hash(id) & mask;
+        while (runs[i] != null) {
+            if (ids[i] == id) {
+                runs[i] = run;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        ids[i] = id;
+        runs[i] = run;
+        size++;
+        return true;
+    }
+    /**
+     * Removes the task if it is still the one stored under the id, returns true if the group is now empty and has been marked dead.
+     */
+    synchronized boolean remove(int id,BukkitRun run){
+        final int mask = runs.length - 1;
+        for (int i = hash(id) & mask; runs[i] != null; i = (i + 1) & mask) {
+            if (ids[i] == id) {
+                if (runs[i] != run) {
+                    return false;
+                }
+                delete(i);
+                if (size == 0) {
+                    dead = true;
+                    return true;
+                }
+                if (size * 8 < runs.length && runs.length > MIN_CAPACITY) {
+                    resize(runs.length >>> 1);
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+    synchronized int size(){
+        return size;
+    }
+    /**
+     * Copies the tasks out so they can be cancelled without holding the lock, cancelling removes them again.
+     */
+    synchronized BukkitRun[] snapshot(){
+        final BukkitRun[] copy = new BukkitRun[size];
+        int n = 0;
+        for (BukkitRun run : runs) {
+            if (run != null) {
+                copy[n++] = run;
+            }
+        }
+        return copy;
+    }
+    /**
+     * Removes the entry in the slot and shifts later entries of the same probe run back into the gap.
+     */
+    private void delete(int slot){
+        final int mask = runs.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; runs[i] != null; i = (i + 1) & mask) {
+            final int home = hash(ids[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                ids[gap] = ids[i];
+                runs[gap] = runs[i];
+                gap = i;
+            }
+        }
+        runs[gap] = null;
+        size--;
+    }
+    private void resize(int capacity){
+        final int[] oldIds = ids;
+        final BukkitRun[] oldRuns = runs;
+        ids = new int[capacity];
+        runs = new BukkitRun[capacity];
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldRuns.length; j++) {
+            if (oldRuns[j] != null) {
+                int i = hash(oldIds[j]) & mask;
+                while (runs[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                ids[i] = oldIds[j];
+                runs[i] = oldRuns[j];
+            }
+        }
+    }
+    private static int hash(int id){
+        final int h = id * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,18 @@
+package org.codemine.schedule;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Issues ids for tasks that are not registered with the Bukkit scheduler. They count down from -2 so they can never
+ * clash with the positive ids issued by Bukkit or the -1 used for a task that is not scheduled.
+ */
+final class TaskIds {
+
+    private static final AtomicInteger IDS = new AtomicInteger(-1);
+
+    private TaskIds(){
+    }
+    static int next(){
+        return IDS.decrementAndGet();
+    }
+}
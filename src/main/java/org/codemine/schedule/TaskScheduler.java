@@ -0,0 +1,185 @@
+package org.codemine.schedule;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * A <tt>TaskScheduler</tt> is what every class in this package schedules Bukkit tasks through, instead of calling
+ * {@link org.bukkit.Bukkit#getScheduler()} directly.
+ * <p>By default it forwards to the server's scheduler. Replacing it with {@link #setDefault(TaskScheduler)} lets
+ * {@link org.codemine.schedule.BukkitRun}, the {@link org.codemine.schedule.TimingWheel} and everything built on them run without a server,
+ * most usefully on a {@link org.codemine.schedule.SimulatedScheduler} that advances ticks on a virtual clock as fast as the CPU allows.
+ * Code that keeps time on the scheduler's {@link #nanoTime()} and {@link #currentTimeMillis()}, such as wall clock timers and
+ * durable tasks, then follows the virtual clock too. The time spent running tasks is always measured on the real clock.</p>
+ * <hr>
+ * An example usage can be seen below, this runs a day of ticks in a test.
+ * <tt>
+ * <pre>
+ * {@code
+ * SimulatedScheduler simulated = new SimulatedScheduler();
+ * TaskScheduler.setDefault(simulated);
+ * try {
+ *     plugin.scheduleEverything();
+ *     simulated.advance(1l,TimeUnit.DAYS);
+ * } finally {
+ *     TaskScheduler.setDefault(null);
+ * }
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public abstract class TaskScheduler {
+
+    private static final TaskScheduler SERVER = new Server();
+    private static volatile TaskScheduler defaultScheduler = SERVER;
+
+    /**
+     * Gets the scheduler that forwards to the server's own scheduler.
+     *
+     * @return the server scheduler
+     */
+    public static TaskScheduler server(){
+        return SERVER;
+    }
+    /**
+     * Sets the scheduler every task in this package is scheduled through. Tasks already scheduled stay where they are.
+     *
+     * @param scheduler the scheduler to use, or null to go back to the server's scheduler
+     */
+    public static void setDefault(TaskScheduler scheduler){
+        defaultScheduler = scheduler == null ? SERVER : scheduler;
+    }
+    /**
+     * Gets the scheduler every task in this package is scheduled through.
+     *
+     * @return the current scheduler
+     */
+    public static TaskScheduler getDefault(){
+        return defaultScheduler;
+    }
+    /**
+     * Runs the task on the main thread on the next tick.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task to run
+     * @return the scheduled task
+     * @see org.bukkit.scheduler.BukkitScheduler#runTask(Plugin,Runnable)
+     */
+    public abstract BukkitTask runTask(Plugin plugin,Runnable task);
+    /**
+     * Runs the task on the main thread after the number of ticks.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task to run
+     * @param delay  the ticks to wait before running the task
+     * @return the scheduled task
+     * @see org.bukkit.scheduler.BukkitScheduler#runTaskLater(Plugin,Runnable,long)
+     */
+    public abstract BukkitTask runTaskLater(Plugin plugin,Runnable task,long delay);
+    /**
+     * Runs the task on the main thread repeatedly until cancelled.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task to run
+     * @param delay  the ticks to wait before running the task for the first time
+     * @param period the ticks to wait between runs
+     * @return the scheduled task
+     * @see org.bukkit.scheduler.BukkitScheduler#runTaskTimer(Plugin,Runnable,long,long)
+     */
+    public abstract BukkitTask runTaskTimer(Plugin plugin,Runnable task,long delay,long period);
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Runs the task asynchronously.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task to run
+     * @return the scheduled task
+     * @see org.bukkit.scheduler.BukkitScheduler#runTaskAsynchronously(Plugin,Runnable)
+     */
+    public abstract BukkitTask runTaskAsynchronously(Plugin plugin,Runnable task);
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Runs the task asynchronously after the number of ticks.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task to run
+     * @param delay  the ticks to wait before running the task
+     * @return the scheduled task
+     * @see org.bukkit.scheduler.BukkitScheduler#runTaskLaterAsynchronously(Plugin,Runnable,long)
+     */
+    public abstract BukkitTask runTaskLaterAsynchronously(Plugin plugin,Runnable task,long delay);
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Runs the task asynchronously and repeatedly until cancelled.
+     *
+     * @param plugin the reference to the plugin scheduling task
+     * @param task   the task to run
+     * @param delay  the ticks to wait before running the task for the first time
+     * @param period the ticks to wait between runs
+     * @return the scheduled task
+     * @see org.bukkit.scheduler.BukkitScheduler#runTaskTimerAsynchronously(Plugin,Runnable,long,long)
+     */
+    public abstract BukkitTask runTaskTimerAsynchronously(Plugin plugin,Runnable task,long delay,long period);
+    /**
+     * Returns true if the current thread is the one sync tasks run on.
+     *
+     * @return true if on the main thread
+     * @see org.bukkit.Bukkit#isPrimaryThread()
+     */
+    public abstract boolean isPrimaryThread();
+    /**
+     * Gets the current value of the clock this scheduler's ticks follow, only differences between values are meaningful.
+     *
+     * @return the current time in nanoseconds
+     * @see System#nanoTime()
+     */
+    public long nanoTime(){
+        return System.nanoTime();
+    }
+    /**
+     * Gets the current wall clock time of this scheduler.
+     *
+     * @return the current time in milliseconds since the epoch
+     * @see System#currentTimeMillis()
+     */
+    public long currentTimeMillis(){
+        return System.currentTimeMillis();
+    }
+
+    private static final class Server extends TaskScheduler {
+
+        @Override
+        public BukkitTask runTask(Plugin plugin,Runnable task){
+            return Bukkit.getScheduler().runTask(plugin,task);
+        }
+        @Override
+        public BukkitTask runTaskLater(Plugin plugin,Runnable task,long delay){
+            return Bukkit.getScheduler().runTaskLater(plugin,task,delay);
+        }
+        @Override
+        public BukkitTask runTaskTimer(Plugin plugin,Runnable task,long delay,long period){
+            return Bukkit.getScheduler().runTaskTimer(plugin,task,delay,period);
+        }
+        @Override
+        public BukkitTask runTaskAsynchronously(Plugin plugin,Runnable task){
+            return Bukkit.getScheduler().runTaskAsynchronously(plugin,task);
+        }
+        @Override
+        public BukkitTask runTaskLaterAsynchronously(Plugin plugin,Runnable task,long delay){
+            return Bukkit.getScheduler().runTaskLaterAsynchronously(plugin,task,delay);
+        }
+        @Override
+        public BukkitTask runTaskTimerAsynchronously(Plugin plugin,Runnable task,long delay,long period){
+            return Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,task,delay,period);
+        }
+        @Override
+        public boolean isPrimaryThread(){
+            return Bukkit.isPrimaryThread();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.codemine.schedule;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A <tt>TaskStats</tt> holds the execution times recorded by {@link org.codemine.schedule.TaskMetrics} for a single task label.
+ * <p>Times are kept in a fixed histogram of 64 buckets where each bucket covers twice the range of the one before it, bucket <tt>n</tt>
+ * holds runs that took between 2<sup>n-1</sup> and 2<sup>n</sup>-1 nanoseconds. Recording a run never allocates, it is a handful of
+ * atomic increments, and percentiles are accurate to within a factor of two which is plenty to find the task that is dropping ticks.</p>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class TaskStats {
+
+    private static final int BUCKETS = 64;
+
+    private final String label;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong asyncCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    TaskStats(String label){
+        this.label = label;
+    }
+    /**
+     * Records a single run of the task.
+     */
+    void record(long nanos,boolean sync){
+        if (nanos < 0L) {
+            nanos = 0L;
+        }
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        (sync ? syncCount : asyncCount).incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max,nanos)) {
+                break;
+            }
+        }
+    }
+    /**
+     * Gets the label the runs were recorded under, by default the class name of the task.
+     *
+     * @return the task label
+     */
+    public String getLabel(){
+        return label;
+    }
+    /**
+     * Gets the number of runs on the main thread.
+     *
+     * @return the sync run count
+     */
+    public long getSyncCount(){
+        return syncCount.get();
+    }
+    /**
+     * Gets the number of asynchronous runs.
+     *
+     * @return the async run count
+     */
+    public long getAsyncCount(){
+        return asyncCount.get();
+    }
+    /**
+     * Gets the total number of runs.
+     *
+     * @return the run count
+     */
+    public long getCount(){
+        return syncCount.get() + asyncCount.get();
+    }
+    /**
+     * Gets the time spent in every run added together.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos(){
+        return totalNanos.get();
+    }
+    /**
+     * Gets the average time of a run.
+     *
+     * @return the mean time in nanoseconds, 0 if there were no runs
+     */
+    public long getMeanNanos(){
+        final long count = getCount();
+        return count == 0L ? 0L : totalNanos.get() / count;
+    }
+    /**
+     * Gets the time of the slowest run.
+     *
+     * @return the maximum time in nanoseconds
+     */
+    public long getMaxNanos(){
+        return maxNanos.get();
+    }
+    /**
+     * Gets the time that the given fraction of runs completed within. The result is the upper bound of the histogram bucket
+     * the percentile falls in.
+     *
+     * @param percentile the fraction of runs, between 0.0 and 1.0, for example 0.99
+     * @return the percentile time in nanoseconds, 0 if there were no runs
+     * @throws IllegalArgumentException if percentile is not between 0.0 and 1.0
+     */
+    public long getPercentileNanos(double percentile) throws IllegalArgumentException{
+        if (percentile < 0.0D || percentile > 1.0D) {
+            throw new IllegalArgumentException("Percentile must be between 0.0 and 1.0");
+        }
+        final long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        final long target = Math.max(1L,(long) Math.ceil(total * percentile));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return i == 0 ? 0L : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1L);
+            }
+        }
+        return maxNanos.get();
+    }
+    /**
+     * Clears every recorded run.
+     */
+    public void reset(){
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i,0L);
+        }
+        syncCount.set(0L);
+        asyncCount.set(0L);
+        totalNanos.set(0L);
+        maxNanos.set(0L);
+    }
+}
@@ -0,0 +1,108 @@
+package org.codemine.schedule;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <tt>TaskTags</tt> groups {@link org.codemine.schedule.BukkitRun}s by owner so they can be counted and cancelled together, such as
+ * every task of an arena when it resets or of a world when it unloads.
+ * <p>A task is tagged with {@link org.codemine.schedule.BukkitRun#tag(Object)} before it is scheduled, the tag can be any object with
+ * a sensible <tt>equals</tt>, the arena itself, a world or a name. Each tag holds its tasks in a table keyed by primitive task id, so
+ * cancelling or counting a tag only touches that tag's tasks, not the whole scheduler. Tasks leave their tags by themselves once they
+ * are done or cancelled through <tt>BukkitRun</tt>, and a tag with no tasks left is forgotten.</p>
+ * <p>A task cancelled behind the <tt>BukkitRun</tt>'s back, through Bukkit's scheduler or when its plugin is disabled, is not seen
+ * and stays counted until its tag is cancelled.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * new BukkitRun() {
+ *     public void run() {
+ *         arena.tick();
+ *     }
+ * }.tag(arena).runTaskTimer(this,1l,1l);
+ *
+ * TaskTags.cancelAll(arena);
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class TaskTags {
+
+    private static final ConcurrentMap<Object,TaskGroup> GROUPS = new ConcurrentHashMap<>();
+
+    private TaskTags(){
+    }
+    /**
+     * Cancels every task carrying the tag.
+     *
+     * @param tag the tag
+     * @return the number of tasks cancelled
+     * @throws IllegalArgumentException if tag is null
+     */
+    public static int cancelAll(Object tag) throws IllegalArgumentException{
+        if (tag == null) {
+            throw new IllegalArgumentException("Tag cannot be null");
+        }
+        final TaskGroup group = GROUPS.get(tag);
+        if (group == null) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (BukkitRun run : group.snapshot()) {
+            if (!run.isCancelled() && !run.isDone()) {
+                run.cancel();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+    /**
+     * Gets the number of scheduled tasks carrying the tag.
+     *
+     * @param tag the tag
+     * @return the number of tasks
+     * @throws IllegalArgumentException if tag is null
+     */
+    public static int count(Object tag) throws IllegalArgumentException{
+        if (tag == null) {
+            throw new IllegalArgumentException("Tag cannot be null");
+        }
+        final TaskGroup group = GROUPS.get(tag);
+        return group == null ? 0 : group.size();
+    }
+    /**
+     * Returns true if any scheduled task carries the tag.
+     *
+     * @param tag the tag
+     * @return true if the tag has tasks
+     * @throws IllegalArgumentException if tag is null
+     */
+    public static boolean contains(Object tag) throws IllegalArgumentException{
+        return count(tag) > 0;
+    }
+    static void add(Object tag,int id,BukkitRun run){
+        for (; ; ) {
+            TaskGroup group = GROUPS.get(tag);
+            if (group == null) {
+                final TaskGroup created = new TaskGroup();
+                group = GROUPS.putIfAbsent(tag,created);
+                if (group == null) {
+                    group = created;
+                }
+            }
+            if (group.add(id,run)) {
+                return;
+            }
+            GROUPS.remove(tag,group);
+        }
+    }
+    static void remove(Object tag,int id,BukkitRun run){
+        final TaskGroup group = GROUPS.get(tag);
+        if (group != null && group.remove(id,run)) {
+            GROUPS.remove(tag,group);
+        }
+    }
+}
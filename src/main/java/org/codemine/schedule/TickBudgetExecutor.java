@@ -0,0 +1,195 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * A <tt>TickBudgetExecutor</tt> spreads a large amount of main thread work over as many ticks as it takes.
+ * <p>Running a big job such as reindexing thousands of blocks in a single {@link org.codemine.schedule.BukkitRun#runTask(org.bukkit.plugin.Plugin)}
+ * produces one long tick and a visible lag spike. Instead callers submit the job as many small units of work, each tick the executor
+ * runs queued units until its budget for that tick is used up and carries whatever is left over to the following ticks.</p>
+ * <p>The budget is given with a {@link org.codemine.schedule.TimeUnit}, a budget of 5 milliseconds leaves the other 45 milliseconds of
+ * a normal tick for the server. At least one unit is run every tick so the queue always makes progress, even if a single unit takes longer
+ * than the whole budget. Units can be submitted from any thread but are always run on the main thread.</p>
+ * <hr>
+ * An example usage can be seen below. This resends every inventory while using at most 5 milliseconds of each tick.
+ * <tt>
+ * <pre>
+ * {@code
+ * TickBudgetExecutor executor = new TickBudgetExecutor(this,5l,TimeUnit.MILLISECONDS);
+ * executor.start();
+ *
+ * for (final Player player : Bukkit.getOnlinePlayers()) {
+ *     executor.execute(new Runnable() {
+ *         public void run() {
+ *             player.updateInventory();
+ *         }
+ *     });
+ * }
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class TickBudgetExecutor implements Executor {
+
+    private final Plugin plugin;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private volatile long budgetNanos;
+    private volatile int lastTickCount;
+    private volatile long lastTickNanos;
+    private BukkitTask driver;
+
+    /**
+     * Creates a new executor owned by the specified plugin. Nothing is run until {@link #start()} is called.
+     *
+     * @param plugin the reference to the plugin that owns the executor
+     * @param budget the amount of time the executor may use each tick
+     * @param unit   the unit of time the budget value relates to
+     * @throws IllegalArgumentException if plugin is null or the budget is not positive
+     */
+    public TickBudgetExecutor(Plugin plugin,long budget,TimeUnit unit) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        this.plugin = plugin;
+        setBudget(budget,unit);
+    }
+    /**
+     * Registers the repeating Bukkit task that drains the queue.
+     *
+     * @throws IllegalStateException if the executor is already running
+     */
+    public synchronized void start() throws IllegalStateException{
+        if (driver != null) {
+            throw new IllegalStateException("Already running as " + driver.getTaskId());
+        }
+        driver = new BukkitRun() {
+
+            public void run(){
+                drain();
+            }
+        }.runTaskTimer(plugin,1L,1L);
+    }
+    /**
+     * Stops draining the queue. Units that are still queued are kept and will run if the executor is started again.
+     */
+    public synchronized void stop(){
+        if (driver != null) {
+            driver.cancel();
+            driver = null;
+        }
+    }
+    /**
+     * Returns true if the executor has been started and not stopped.
+     *
+     * @return true if the draining task is registered
+     */
+    public synchronized boolean isRunning(){
+        return driver != null;
+    }
+    /**
+     * Changes the amount of time the executor may use each tick, takes effect from the next tick.
+     *
+     * @param budget the amount of time the executor may use each tick
+     * @param unit   the unit of time the budget value relates to
+     * @throws IllegalArgumentException if the budget is less than 1 millisecond
+     */
+    public void setBudget(long budget,TimeUnit unit) throws IllegalArgumentException{
+        final long millis = unit.toMillis(budget);
+        if (millis < 1L) {
+            throw new IllegalArgumentException("Budget must be at least 1 millisecond");
+        }
+        this.budgetNanos = millis * 1000000L;
+    }
+    /**
+     * Gets the amount of time the executor may use each tick.
+     *
+     * @return the budget in milliseconds
+     */
+    public long getBudgetMillis(){
+        return budgetNanos / 1000000L;
+    }
+    /**
+     * Queues a unit of work to be run on the main thread.
+     *
+     * @param command the unit of work
+     * @throws IllegalArgumentException if command is null
+     */
+    @Override
+    public void execute(Runnable command) throws IllegalArgumentException{
+        if (command == null) {
+            throw new IllegalArgumentException("Command cannot be null");
+        }
+        backlog.incrementAndGet();
+        queue.add(command);
+    }
+    /**
+     * Gets the number of units that have been submitted but not yet run.
+     *
+     * @return the current backlog depth
+     */
+    public int getBacklog(){
+        return backlog.get();
+    }
+    /**
+     * Gets the total number of units that have been run.
+     *
+     * @return the number of completed units
+     */
+    public long getCompleted(){
+        return completed.get();
+    }
+    /**
+     * Gets the number of units that were run during the last tick.
+     *
+     * @return the units run in the last tick
+     */
+    public int getLastTickCount(){
+        return lastTickCount;
+    }
+    /**
+     * Gets the time spent running units during the last tick.
+     *
+     * @return the time used in the last tick in nanoseconds
+     */
+    public long getLastTickNanos(){
+        return lastTickNanos;
+    }
+    /**
+     * Runs queued units until the budget for this tick is used up or the queue is empty.
+     */
+    void drain(){
+        final long start = System.nanoTime();
+        final long end = start + budgetNanos;
+        int count = 0;
+        long now = start;
+        Runnable command;
+        while ((command = queue.poll()) != null) {
+            backlog.decrementAndGet();
+            try {
+                command.run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING,"Budgeted task for " + plugin.getName() + " generated an exception",t);
+            }
+            count++;
+            now = System.nanoTime();
+            if (now - end >= 0L) {
+                break;
+            }
+        }
+        if (count > 0) {
+            completed.addAndGet(count);
+        }
+        lastTickCount = count;
+        lastTickNanos = now - start;
+    }
+}
@@ -0,0 +1,156 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * A <tt>TickRateEstimator</tt> measures how long server ticks are really taking.
+ * <p>{@link org.codemine.schedule.TimeUnit} defines a tick as 50 milliseconds, which is only true while the server keeps up.
+ * At 14 TPS a 5 minute delay converted with {@link org.codemine.schedule.TimeUnit#toTicks(long)} runs over 7 minutes later.
+ * The estimator samples {@link org.codemine.schedule.TaskScheduler#nanoTime()} once per tick on the main thread and keeps an exponentially weighted moving
+ * average of the tick length, so it costs one subtraction and one division per tick no matter how many timers use it.</p>
+ * <p>Conversions never assume ticks are shorter than 50 milliseconds. A server catching up runs a few short ticks in a row,
+ * counting them would make wall clock delays finish late.</p>
+ * <hr>
+ * An example usage can be seen below. The delay is converted using the measured tick rate.
+ * <tt>
+ * <pre>
+ * {@code
+ * TickRateEstimator rate = new TickRateEstimator();
+ * rate.start(this);
+ *
+ * new BukkitRun() {
+ *
+ *       public void run() {
+ *           System.out.println("Hello I was delayed 5 minutes of real time");
+ *       }
+ *    }.runTaskLater(this,TimeUnit.MINUTES.toTicks(5l,rate));
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class TickRateEstimator {
+
+    /**
+     * The length of a tick when the server is running at full speed, in nanoseconds.
+     */
+    public static final long NOMINAL_TICK_NANOS = TimeUnit.TICKS.toMillis(1L) * 1000000L;
+    private static final int DEFAULT_WINDOW = 100;
+
+    private final int window;
+    private volatile long nanosPerTick = NOMINAL_TICK_NANOS;
+    private long last;
+    private BukkitTask driver;
+
+    /**
+     * Creates an estimator that averages over roughly the last 100 ticks.
+     */
+    public TickRateEstimator(){
+        this(DEFAULT_WINDOW);
+    }
+    /**
+     * Creates an estimator that averages over roughly the specified number of ticks.
+     *
+     * @param window the number of ticks the moving average spans
+     * @throws IllegalArgumentException if window is less than 1
+     */
+    public TickRateEstimator(int window) throws IllegalArgumentException{
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least 1 tick");
+        }
+        this.window = window;
+    }
+    /**
+     * Registers the repeating Bukkit task that samples the tick length.
+     *
+     * @param plugin the reference to the plugin that owns the estimator
+     * @throws IllegalArgumentException if plugin is null
+     * @throws IllegalStateException    if the estimator is already running
+     */
+    public synchronized void start(Plugin plugin) throws IllegalArgumentException, IllegalStateException{
+        if (driver != null) {
+            throw new IllegalStateException("Already running as " + driver.getTaskId());
+        }
+        last = 0L;
+        driver = new BukkitRun() {
+
+            public void run(){
+                sample(TaskScheduler.getDefault().nanoTime());
+            }
+        }.runTaskTimer(plugin,1L,1L);
+    }
+    /**
+     * Stops sampling, the last estimate is kept.
+     */
+    public synchronized void stop(){
+        if (driver != null) {
+            driver.cancel();
+            driver = null;
+        }
+    }
+    /**
+     * Records the start of a tick.
+     *
+     * @param now the value of {@link org.codemine.schedule.TaskScheduler#nanoTime()} at the start of the tick
+     */
+    void sample(long now){
+        final long previous = last;
+        last = now;
+        if (previous != 0L) {
+            final long average = nanosPerTick;
+            nanosPerTick = average + (now - previous - average) / window;
+        }
+    }
+    /**
+     * Gets the average length of a tick.
+     *
+     * @return the measured tick length in nanoseconds
+     */
+    public long getNanosPerTick(){
+        return nanosPerTick;
+    }
+    /**
+     * Gets the average length of a tick.
+     *
+     * @return the measured tick length in milliseconds
+     */
+    public double getMillisPerTick(){
+        return nanosPerTick / 1000000.0D;
+    }
+    /**
+     * Gets the measured number of ticks per second, never more than 20.
+     *
+     * @return the measured tick rate
+     */
+    public double getTicksPerSecond(){
+        return 1000000000.0D / Math.max(NOMINAL_TICK_NANOS,nanosPerTick);
+    }
+    /**
+     * Converts a duration to the number of ticks that will take that long at the measured tick rate.
+     * Tick durations are returned unchanged.
+     *
+     * @param duration the duration
+     * @param unit     the unit of the duration argument
+     * @return the number of ticks, at least 1 for a positive duration
+     */
+    public long toTicks(long duration,TimeUnit unit){
+        if (unit == TimeUnit.TICKS || duration <= 0L) {
+            return unit.toTicks(duration);
+        }
+        final long millis = unit.toMillis(duration);
+        if (millis > Long.MAX_VALUE / 1000000L) {
+            return unit.toTicks(duration);
+        }
+        return Math.max(1L,nanosToTicks(millis * 1000000L));
+    }
+    /**
+     * Converts a number of nanoseconds to whole ticks at the measured tick rate, rounding down.
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the number of ticks
+     */
+    public long nanosToTicks(long nanos){
+        return nanos / Math.max(NOMINAL_TICK_NANOS,nanosPerTick);
+    }
+}
@@ -0,0 +1,198 @@
+package org.codemine.schedule;
+
+/**
+ * Maps a key of two longs, such as the halves of a UUID, to the tick until which it is limited. Used by {@link org.codemine.schedule.Cooldown}
+ * and {@link org.codemine.schedule.TokenBucket}.
+ * <p>The keys are spread over 16 stripes, each an open addressing table of primitive arrays guarded by its own lock, so threads
+ * only contend when they touch the same stripe and nothing is allocated per entry. An entry whose tick has passed is the same as no
+ * entry, so nothing needs to be removed on time: expired entries are skipped by reads and dropped whenever a stripe is resized.</p>
+ * <p>Limits follow the generic cell rate algorithm. The stored tick is when the key would be fully replenished, a request costing
+ * <tt>cost</tt> ticks is allowed if that moves the tick no further than <tt>limit</tt> ticks past now. A cooldown is the case where
+ * cost and limit are both the cooldown length.</p>
+ */
+final class TickStore {
+
+    private static final int STRIPES = 16;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    TickStore(){
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+    /**
+     * Gets the tick the key is limited until, or 0 if it is not limited.
+     */
+    long get(long hi,long lo,long now){
+        final long hash = hash(hi,lo);
+        final Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            final int slot = stripe.find(hi,lo,hash);
+            if (slot < 0) {
+                return 0L;
+            }
+            final long until = stripe.until[slot];
+            return until > now ? until : 0L;
+        }
+    }
+    /**
+     * Takes cost ticks from the key if that leaves it limited for at most limit ticks. Returns 0 if allowed, otherwise the number of
+     * ticks until it would be.
+     */
+    long acquire(long hi,long lo,long now,long cost,long limit){
+        final long hash = hash(hi,lo);
+        final Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            final int slot = stripe.find(hi,lo,hash);
+            final long start = slot < 0 ? now : Math.max(stripe.until[slot],now);
+            final long until = start + cost;
+            if (until - now > limit) {
+                return until - now - limit;
+            }
+            if (slot < 0) {
+                stripe.insert(hi,lo,hash,until,now);
+            } else {
+                stripe.until[slot] = until;
+            }
+            return 0L;
+        }
+    }
+    /**
+     * Sets the tick the key is limited until, or removes it if the tick has already passed.
+     */
+    void put(long hi,long lo,long until,long now){
+        final long hash = hash(hi,lo);
+        final Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            final int slot = stripe.find(hi,lo,hash);
+            if (until <= now) {
+                if (slot >= 0) {
+                    stripe.delete(slot);
+                }
+            } else if (slot < 0) {
+                stripe.insert(hi,lo,hash,until,now);
+            } else {
+                stripe.until[slot] = until;
+            }
+        }
+    }
+    /**
+     * Counts the keys still limited.
+     */
+    int size(long now){
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.until.length; i++) {
+                    if (stripe.until[i] > now) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+    void clear(){
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.resize(MIN_CAPACITY,Long.MAX_VALUE);
+            }
+        }
+    }
+    private static long hash(long hi,long lo){
+        long h = hi * 0x9e3779b97f4a7c15L + lo;
+        h = (h ^ (h >>> 32)) * 0xd6e8feb86659fd93L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * A linear probing table where an until of 0 marks an empty slot. Stored ticks are always ahead of the tick they were stored on,
+     * which is never negative, so 0 is never a live value.
+     */
+    private static final class Stripe {
+
+        long[] hi = new long[MIN_CAPACITY];
+        long[] lo = new long[MIN_CAPACITY];
+        long[] until = new long[MIN_CAPACITY];
+        int used;
+
+        int find(long khi,long klo,long hash){
+            final int mask = until.length - 1;
+            for (int i = (int) hash & mask; until[i] != 0L; i = (i + 1) & mask) {
+                if (hi[i] == khi && lo[i] == klo) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        void insert(long khi,long klo,long hash,long value,long now){
+            if ((used + 1) * 4 > until.length * 3) {
+                int live = 0;
+                for (long u : until) {
+                    if (u > now) {
+                        live++;
+                    }
+                }
+                int capacity = MIN_CAPACITY;
+                while (capacity < (live + 1) * 2) {
+                    capacity <<= 1;
+                }
+                resize(capacity,now);
+            }
+            final int mask = until.length - 1;
+            int i = (int) hash & mask;
+            while (until[i] != 0L) {
+                i = (i + 1) & mask;
+            }
+            hi[i] = khi;
+            lo[i] = klo;
+            until[i] = value;
+            used++;
+        }
+        /**
+         * Removes the entry in the slot and shifts later entries of the same probe run back into the gap.
+         */
+        void delete(int slot){
+            final int mask = until.length - 1;
+            int gap = slot;
+            for (int i = (slot + 1) & mask; until[i] != 0L; i = (i + 1) & mask) {
+                final int home = (int) hash(hi[i],lo[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    hi[gap] = hi[i];
+                    lo[gap] = lo[i];
+                    until[gap] = until[i];
+                    gap = i;
+                }
+            }
+            until[gap] = 0L;
+            used--;
+        }
+        /**
+         * Rebuilds the table at the capacity, keeping only entries still limited after now.
+         */
+        void resize(int capacity,long now){
+            final long[] oldHi = hi;
+            final long[] oldLo = lo;
+            final long[] oldUntil = until;
+            hi = new long[capacity];
+            lo = new long[capacity];
+            until = new long[capacity];
+            used = 0;
+            final int mask = capacity - 1;
+            for (int j = 0; j < oldUntil.length; j++) {
+                if (oldUntil[j] > now) {
+                    int i = (int) hash(oldHi[j],oldLo[j]) & mask;
+                    while (until[i] != 0L) {
+                        i = (i + 1) & mask;
+                    }
+                    hi[i] = oldHi[j];
+                    lo[i] = oldLo[j];
+                    until[i] = oldUntil[j];
+                    used++;
+                }
+            }
+        }
+    }
+}
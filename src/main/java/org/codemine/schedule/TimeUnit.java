@@ -184,6 +184,19 @@ public enum TimeUnit {
     public long toTicks(long duration){
         throw new AbstractMethodError();
     }
+    /**
+     * Converts the duration to ticks using the tick rate measured by a {@link org.codemine.schedule.TickRateEstimator}
+     * instead of the fixed 50 milliseconds per tick. When the server is lagging this returns fewer ticks than
+     * {@link #toTicks(long)} so the delay still lasts the requested amount of real time. Tick durations are returned unchanged.
+     *
+     * @param duration the duration
+     * @param rate     the estimator to convert with, or null to use the fixed tick length
+     * @return the converted duration
+     * @see #toTicks(long)
+     */
+    public long toTicks(long duration,TickRateEstimator rate){
+        return rate == null ? toTicks(duration) : rate.toTicks(duration,this);
+    }
     /**
      * Equivalent to <tt>SECONDS.convert(duration, this)</tt>.
      *
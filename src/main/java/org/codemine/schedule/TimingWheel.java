@@ -0,0 +1,523 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * A <tt>TimingWheel</tt> multiplexes any number of delayed and repeating tasks onto a single repeating Bukkit task.
+ * <p>Every task scheduled through the Bukkit scheduler is an entry in its priority queue, with thousands of short lived
+ * tasks that queue becomes a measurable cost on the main thread. A <tt>TimingWheel</tt> registers exactly one task that runs
+ * every tick and dispatches everything else itself from a hierarchical timing wheel keyed in ticks.</p>
+ * <p>The wheel has 4 levels of 64 slots. Level 0 holds tasks due in the next 64 ticks, each further level covers 64 times
+ * the range of the level below it, so the wheel spans 16777216 ticks (a little over 9 days). Tasks further out than that
+ * wait on an overflow list which is revisited once per revolution. When a higher level slot comes round its tasks are cascaded
+ * down to the level below, so scheduling and cancelling are both O(1) and each tick only touches the tasks that are due.</p>
+ * <p>The wheel itself is only ever modified on the main thread. Tasks scheduled or cancelled from other threads are queued
+ * and applied at the start of the next tick.</p>
+ * <p>With {@link #setWallClock(boolean)} enabled, delays and periods given in any {@link org.codemine.schedule.TimeUnit} other than
+ * ticks are measured against {@link System#nanoTime()} deadlines instead. The task is placed at the tick the deadline is expected
+ * to fall on using the rate from {@link #setTickRate(TickRateEstimator)}; if the deadline has not passed when that tick arrives the
+ * task is placed again for the remaining time, so it fires on the first tick after its deadline without being polled every tick.</p>
+ * <p>With {@link #setSpreading(boolean)} enabled, repeating tasks that share a period of up to a minute are given different phases
+ * within that period, so hundreds of once a second timers do not all run on the same tick. A new timer may start up to one period
+ * later than requested, and when a timer is cancelled one timer from the busiest phase may have a single run pushed back to even
+ * the load out again. {@link #getLoadDistribution(int)} reports how the spread timers fall on the coming ticks.</p>
+ * <hr>
+ * An example usage can be seen below. This runs the task every 5 seconds through the wheel.
+ * <tt>
+ * <pre>
+ * {@code
+ * TimingWheel wheel = new TimingWheel(this);
+ * wheel.start();
+ *
+ * new BukkitRun() {
+ *
+ *       public void run() {
+ *           System.out.println("Hello I run every 5 seconds");
+ *       }
+ *    }.runTaskTimer(wheel,0l,5l,TimeUnit.SECONDS);
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    private final Plugin plugin;
+    private final WheelTask[][] wheel = new WheelTask[LEVELS][SLOTS];
+    private final WheelTask overflow;
+    private final WheelTask pending;
+    private final ConcurrentLinkedQueue<WheelTask> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile long tick;
+    private volatile boolean wallClock;
+    private volatile TickRateEstimator rate;
+    private volatile boolean spreading;
+    private final PhaseSpreader spreader = new PhaseSpreader();
+    private BukkitTask driver;
+
+    /**
+     * Creates a new wheel owned by the specified plugin. The wheel does not dispatch anything until {@link #start()} is called.
+     *
+     * @param plugin the reference to the plugin that owns the wheel
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public TimingWheel(Plugin plugin) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        this.plugin = plugin;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new WheelTask(this);
+            }
+        }
+        this.overflow = new WheelTask(this);
+        this.pending = new WheelTask(this);
+    }
+    /**
+     * Registers the single repeating Bukkit task that drives the wheel.
+     *
+     * @throws IllegalStateException if the wheel is already running
+     */
+    public synchronized void start() throws IllegalStateException{
+        if (driver != null) {
+            throw new IllegalStateException("Already running as " + driver.getTaskId());
+        }
+        driver = new BukkitRun() {
+
+            public void run(){
+                tick();
+            }
+        }.runTaskTimer(plugin,1L,1L);
+    }
+    /**
+     * Stops the wheel. Tasks that are still scheduled remain in the wheel and will resume if the wheel is started again.
+     */
+    public synchronized void stop(){
+        if (driver != null) {
+            driver.cancel();
+            driver = null;
+        }
+    }
+    /**
+     * Returns true if the wheel has been started and not stopped.
+     *
+     * @return true if the driving task is registered
+     */
+    public synchronized boolean isRunning(){
+        return driver != null;
+    }
+    /**
+     * Gets the plugin that owns this wheel and all the tasks scheduled on it.
+     *
+     * @return the owning plugin
+     */
+    public Plugin getPlugin(){
+        return plugin;
+    }
+    /**
+     * Gets the number of ticks the wheel has processed since it was created.
+     *
+     * @return the current tick of the wheel
+     */
+    public long getCurrentTick(){
+        return tick;
+    }
+    /**
+     * Gets the number of tasks that are scheduled and have not yet completed or been cancelled.
+     *
+     * @return the number of live tasks
+     */
+    public int size(){
+        return size.get();
+    }
+    /**
+     * Sets whether delays given in units other than ticks are measured in real time. Only affects tasks scheduled afterwards.
+     *
+     * @param wallClock true to schedule against real time deadlines
+     */
+    public void setWallClock(boolean wallClock){
+        this.wallClock = wallClock;
+    }
+    /**
+     * Returns true if delays given in units other than ticks are measured in real time.
+     *
+     * @return true if wall clock mode is enabled
+     */
+    public boolean isWallClock(){
+        return wallClock;
+    }
+    /**
+     * Sets the estimator used to predict which tick a real time deadline falls on. Without one ticks are assumed to take 50 milliseconds.
+     *
+     * @param rate the estimator to use, or null to use the fixed tick length
+     */
+    public void setTickRate(TickRateEstimator rate){
+        this.rate = rate;
+    }
+    /**
+     * Gets the estimator used to predict which tick a real time deadline falls on.
+     *
+     * @return the estimator, or null if the fixed tick length is used
+     */
+    public TickRateEstimator getTickRate(){
+        return rate;
+    }
+    /**
+     * Sets whether repeating tasks that share a period are spread evenly over the ticks of that period. Only affects tasks scheduled afterwards.
+     *
+     * @param spreading true to give each new repeating task the least loaded phase of its period
+     */
+    public void setSpreading(boolean spreading){
+        this.spreading = spreading;
+    }
+    /**
+     * Returns true if repeating tasks that share a period are spread evenly over the ticks of that period.
+     *
+     * @return true if spreading is enabled
+     */
+    public boolean isSpreading(){
+        return spreading;
+    }
+    /**
+     * Gets the number of spread tasks in each phase of the period. Should be called on the main thread.
+     *
+     * @param period the period in ticks
+     * @return the number of tasks in each phase, index 0 being the ticks that are a multiple of the period
+     */
+    public int[] getPhaseLoad(long period){
+        return spreader.load(period);
+    }
+    /**
+     * Gets the number of spread repeating tasks that will run on each of the coming ticks. Should be called on the main thread.
+     *
+     * @param ticks the number of ticks to report on
+     * @return the number of tasks due on each tick, index 0 being the next tick
+     */
+    public int[] getLoadDistribution(int ticks){
+        return spreader.distribution(tick,ticks);
+    }
+    /**
+     * Schedules a task to run on the main thread after the specified number of ticks.
+     *
+     * @param task  the task to run
+     * @param delay the ticks to wait before running the task
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskLater(Runnable task,long delay) throws IllegalArgumentException{
+        return schedule(task,false,delay,0L);
+    }
+    /**
+     * Schedules a task to run on the main thread after the specified delay value and the {@link org.codemine.schedule.TimeUnit}.
+     *
+     * @param task  the task to run
+     * @param delay the delay value to wait before running the task
+     * @param unit  the unit of time the delay value relates to
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskLater(Runnable task,long delay,TimeUnit unit) throws IllegalArgumentException{
+        return wallClock(unit) ? schedule(task,false,unit,delay,0L) : schedule(task,false,unit.toTicks(delay),0L);
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules a task to be handed to the asynchronous executor after the specified number of ticks.
+     *
+     * @param task  the task to run
+     * @param delay the ticks to wait before running the task
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskLaterAsynchronously(Runnable task,long delay) throws IllegalArgumentException{
+        return schedule(task,true,delay,0L);
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules a task to be handed to the asynchronous executor after the specified delay value and the {@link org.codemine.schedule.TimeUnit}.
+     *
+     * @param task  the task to run
+     * @param delay the delay value to wait before running the task
+     * @param unit  the unit of time the delay value relates to
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskLaterAsynchronously(Runnable task,long delay,TimeUnit unit) throws IllegalArgumentException{
+        return wallClock(unit) ? schedule(task,true,unit,delay,0L) : schedule(task,true,unit.toTicks(delay),0L);
+    }
+    /**
+     * Schedules a task to repeatedly run on the main thread until cancelled, starting after the specified number of ticks.
+     *
+     * @param task   the task to run
+     * @param delay  the ticks to wait before running the task
+     * @param period the ticks to wait between runs
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskTimer(Runnable task,long delay,long period) throws IllegalArgumentException{
+        return schedule(task,false,delay,Math.max(1L,period));
+    }
+    /**
+     * Schedules a task to repeatedly run on the main thread until cancelled, starting after the specified delay value and period value and the {@link org.codemine.schedule.TimeUnit}.
+     *
+     * @param task   the task to run
+     * @param delay  the delay value to wait before running the task
+     * @param period the period to wait between runs
+     * @param unit   the unit of time the delay and period values relate to
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskTimer(Runnable task,long delay,long period,TimeUnit unit) throws IllegalArgumentException{
+        return wallClock(unit) ? schedule(task,false,unit,delay,Math.max(1L,period)) : schedule(task,false,unit.toTicks(delay),Math.max(1L,unit.toTicks(period)));
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules a task to be repeatedly handed to the asynchronous executor until cancelled, starting after the specified number of ticks.
+     *
+     * @param task   the task to run
+     * @param delay  the ticks to wait before running the task for the first time
+     * @param period the ticks to wait between runs
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskTimerAsynchronously(Runnable task,long delay,long period) throws IllegalArgumentException{
+        return schedule(task,true,delay,Math.max(1L,period));
+    }
+    /**
+     * <b>Asynchronous tasks should never access any API in Bukkit. Great care should be taken to assure the thread-safety of asynchronous tasks.</b>
+     * <p/>
+     * Schedules a task to be repeatedly handed to the asynchronous executor until cancelled, starting after the specified delay value and period value and the {@link org.codemine.schedule.TimeUnit}.
+     *
+     * @param task   the task to run
+     * @param delay  the delay value to wait before running the task for the first time
+     * @param period the period to wait between runs
+     * @param unit   the unit of time the delay and period values relate to
+     * @return the handle of the scheduled task
+     * @throws IllegalArgumentException if task is null
+     */
+    public WheelTask runTaskTimerAsynchronously(Runnable task,long delay,long period,TimeUnit unit) throws IllegalArgumentException{
+        return wallClock(unit) ? schedule(task,true,unit,delay,Math.max(1L,period)) : schedule(task,true,unit.toTicks(delay),Math.max(1L,unit.toTicks(period)));
+    }
+    private boolean wallClock(TimeUnit unit){
+        return wallClock && unit != TimeUnit.TICKS;
+    }
+    private WheelTask schedule(Runnable task,boolean async,long delay,long period){
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        return submit(new WheelTask(this,task,TaskIds.next(),async,Math.max(1L,delay),period));
+    }
+    private WheelTask schedule(Runnable task,boolean async,TimeUnit unit,long delay,long period){
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        final WheelTask handle = new WheelTask(this,task,TaskIds.next(),async,1L,period);
+        handle.wallClock = true;
+        handle.deadlineNanos = TaskScheduler.getDefault().nanoTime() + toNanos(delay,unit);
+        handle.periodNanos = period > 0L ? Math.max(1L,toNanos(period,unit)) : 0L;
+        return submit(handle);
+    }
+    private WheelTask submit(WheelTask handle){
+        size.incrementAndGet();
+        if (TaskScheduler.getDefault().isPrimaryThread()) {
+            arm(handle);
+        } else {
+            incoming.add(handle);
+        }
+        return handle;
+    }
+    private static long toNanos(long duration,TimeUnit unit){
+        final long millis = unit.toMillis(duration);
+        return millis > Long.MAX_VALUE / 1000000L ? Long.MAX_VALUE / 2L : millis * 1000000L;
+    }
+    /**
+     * Called once a handle has moved to the cancelled state.
+     */
+    void cancelled(WheelTask handle){
+        size.decrementAndGet();
+        if (TaskScheduler.getDefault().isPrimaryThread()) {
+            discard(handle);
+        } else {
+            incoming.add(handle);
+        }
+    }
+    /**
+     * Advances the wheel by one tick, cascading and dispatching every task that is now due.
+     */
+    void tick(){
+        drainIncoming();
+        final long now = ++tick;
+        if ((now & (SPAN - 1L)) == 0L) {
+            cascade(overflow);
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((now & ((1L << (BITS * level)) - 1L)) == 0L) {
+                cascade(wheel[level][(int) (now >>> (BITS * level)) & MASK]);
+            }
+        }
+        expire(wheel[0][(int) now & MASK]);
+    }
+    private void drainIncoming(){
+        WheelTask handle;
+        while ((handle = incoming.poll()) != null) {
+            if (handle.isCancelled()) {
+                discard(handle);
+            } else if (!handle.isLinked()) {
+                arm(handle);
+            }
+        }
+    }
+    /**
+     * Places a newly scheduled task, a wall clock task is placed at the tick its deadline is expected to fall on.
+     */
+    private void arm(WheelTask handle){
+        if (handle.wallClock) {
+            handle.deadline = tick + ticksUntil(handle.deadlineNanos,TaskScheduler.getDefault().nanoTime());
+        } else if (spreading && PhaseSpreader.accepts(handle.period)) {
+            handle.deadline = spreader.assign(handle,tick + handle.delay);
+        } else {
+            handle.deadline = tick + handle.delay;
+        }
+        place(handle);
+    }
+    /**
+     * Removes a cancelled task from the wheel and from its phase group, moving another task of the group if that evens out the load.
+     */
+    private void discard(WheelTask handle){
+        if (handle.isLinked()) {
+            handle.unlink();
+        }
+        if (handle.phase < 0) {
+            return;
+        }
+        final WheelTask moved = spreader.remove(handle);
+        if (moved != null) {
+            final boolean linked = moved.isLinked();
+            if (linked) {
+                moved.unlink();
+            }
+            moved.deadline += moved.shift;
+            if (linked) {
+                place(moved);
+            }
+        }
+    }
+    private long ticksUntil(long deadlineNanos,long now){
+        final TickRateEstimator estimator = rate;
+        final long remaining = deadlineNanos - now;
+        final long ticks = estimator == null ? remaining / TickRateEstimator.NOMINAL_TICK_NANOS : estimator.nanosToTicks(remaining);
+        return Math.max(1L,ticks);
+    }
+    private void place(WheelTask handle){
+        final long diff = handle.deadline ^ tick;
+        final int level = diff == 0L ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / BITS;
+        final WheelTask head = level < LEVELS ? wheel[level][(int) (handle.deadline >>> (BITS * level)) & MASK] : overflow;
+        handle.prev = head.prev;
+        handle.next = head;
+        head.prev.next = handle;
+        head.prev = handle;
+    }
+    /**
+     * Moves every task in the slot onto the pending list so that tasks can be unlinked while the slot is being processed.
+     */
+    private boolean detach(WheelTask head){
+        if (head.next == head) {
+            return false;
+        }
+        pending.next = head.next;
+        pending.prev = head.prev;
+        head.next.prev = pending;
+        head.prev.next = pending;
+        head.next = head;
+        head.prev = head;
+        return true;
+    }
+    private void cascade(WheelTask head){
+        if (!detach(head)) {
+            return;
+        }
+        WheelTask handle;
+        while ((handle = pending.next) != pending) {
+            handle.unlink();
+            place(handle);
+        }
+    }
+    private void expire(WheelTask head){
+        if (!detach(head)) {
+            return;
+        }
+        long nanos = 0L;
+        WheelTask handle;
+        while ((handle = pending.next) != pending) {
+            handle.unlink();
+            if (handle.isCancelled()) {
+                discard(handle);
+                continue;
+            }
+            if (handle.wallClock) {
+                if (nanos == 0L) {
+                    nanos = TaskScheduler.getDefault().nanoTime();
+                }
+                if (handle.deadlineNanos - nanos > 0L) {
+                    handle.deadline = tick + ticksUntil(handle.deadlineNanos,nanos);
+                    place(handle);
+                    continue;
+                }
+                if (handle.isPeriodic()) {
+                    handle.deadlineNanos += handle.periodNanos;
+                    if (handle.deadlineNanos - nanos <= 0L) {
+                        handle.deadlineNanos = nanos + handle.periodNanos;
+                    }
+                    handle.deadline = tick + ticksUntil(handle.deadlineNanos,nanos);
+                    place(handle);
+                    dispatch(handle);
+                    continue;
+                }
+            }
+            if (handle.isPeriodic()) {
+                handle.deadline = tick + handle.period;
+                place(handle);
+            } else if (handle.complete()) {
+                size.decrementAndGet();
+            } else {
+                continue;
+            }
+            dispatch(handle);
+        }
+    }
+    private void dispatch(WheelTask handle){
+        try {
+            if (handle.async) {
+                AsyncExecutor.dispatch(plugin,TaskMetrics.wrap(handle.task,false));
+            } else {
+                final Watchdog watchdog = Watchdog.active;
+                if (watchdog == null) {
+                    TaskMetrics.run(handle.task,true);
+                } else {
+                    watchdog.enter(handle.task,plugin);
+                    try {
+                        TaskMetrics.run(handle.task,true);
+                    } finally {
+                        watchdog.exit();
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            plugin.getLogger().log(Level.WARNING,"Task #" + handle.id + " for " + plugin.getName() + " generated an exception",t);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.codemine.schedule;
+
+import java.util.UUID;
+
+/**
+ * A <tt>TokenBucket</tt> limits how often each key can do something, allowing short bursts. Created by
+ * {@link org.codemine.schedule.CooldownRegistry#bucket(String,int,long,TimeUnit)}.
+ * <p>Every key starts with a full bucket of capacity tokens and gains one token each refill interval, up to the capacity again. Only
+ * a single tick is stored per key, the tick its bucket will be full again, and tokens are worked out from it when asked for.
+ * Keys are player UUIDs or entity ids, as for {@link org.codemine.schedule.Cooldown}. Every method may be called from any thread.</p>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class TokenBucket {
+
+    private final CooldownRegistry registry;
+    private final String name;
+    private final int capacity;
+    private final long refill;
+    private final long limit;
+    private final TickStore store = new TickStore();
+
+    TokenBucket(CooldownRegistry registry,String name,int capacity,long refill){
+        this.registry = registry;
+        this.name = name;
+        this.capacity = capacity;
+        this.refill = refill;
+        this.limit = capacity * refill;
+    }
+    /**
+     * Gets the name the bucket was registered with.
+     *
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+    /**
+     * Gets the largest number of tokens the bucket holds.
+     *
+     * @return the capacity
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+    /**
+     * Takes one token for the key if there is one.
+     *
+     * @param id the player's UUID
+     * @return true if a token was taken
+     * @throws IllegalStateException if the registry is not running
+     */
+    public boolean tryAcquire(UUID id) throws IllegalStateException{
+        return tryAcquire(id,1);
+    }
+    /**
+     * Takes a number of tokens for the key if there are enough, otherwise takes none.
+     *
+     * @param id     the player's UUID
+     * @param tokens the number of tokens to take
+     * @return true if the tokens were taken
+     * @throws IllegalArgumentException if tokens is less than 1
+     * @throws IllegalStateException    if the registry is not running
+     */
+    public boolean tryAcquire(UUID id,int tokens) throws IllegalArgumentException, IllegalStateException{
+        return acquire(id.getMostSignificantBits(),id.getLeastSignificantBits(),tokens) == 0L;
+    }
+    /**
+     * Takes one token for the key if there is one.
+     *
+     * @param entityId the entity id
+     * @return true if a token was taken
+     * @throws IllegalStateException if the registry is not running
+     */
+    public boolean tryAcquire(int entityId) throws IllegalStateException{
+        return tryAcquire(entityId,1);
+    }
+    /**
+     * Takes a number of tokens for the key if there are enough, otherwise takes none.
+     *
+     * @param entityId the entity id
+     * @param tokens   the number of tokens to take
+     * @return true if the tokens were taken
+     * @throws IllegalArgumentException if tokens is less than 1
+     * @throws IllegalStateException    if the registry is not running
+     */
+    public boolean tryAcquire(int entityId,int tokens) throws IllegalArgumentException, IllegalStateException{
+        return acquire(0L,entityId,tokens) == 0L;
+    }
+    /**
+     * Gets the number of tokens the key has now.
+     *
+     * @param id the player's UUID
+     * @return the number of tokens
+     * @throws IllegalStateException if the registry is not running
+     */
+    public int getAvailable(UUID id) throws IllegalStateException{
+        return available(id.getMostSignificantBits(),id.getLeastSignificantBits());
+    }
+    /**
+     * Gets the number of tokens the key has now.
+     *
+     * @param entityId the entity id
+     * @return the number of tokens
+     * @throws IllegalStateException if the registry is not running
+     */
+    public int getAvailable(int entityId) throws IllegalStateException{
+        return available(0L,entityId);
+    }
+    /**
+     * Gets the time until the key has a token, without taking it.
+     *
+     * @param id   the player's UUID
+     * @param unit the unit of time to return, rounded up
+     * @return the time to wait, 0 if a token is available
+     * @throws IllegalStateException if the registry is not running
+     */
+    public long getWait(UUID id,TimeUnit unit) throws IllegalStateException{
+        return wait(id.getMostSignificantBits(),id.getLeastSignificantBits(),unit);
+    }
+    /**
+     * Gets the time until the key has a token, without taking it.
+     *
+     * @param entityId the entity id
+     * @param unit     the unit of time to return, rounded up
+     * @return the time to wait, 0 if a token is available
+     * @throws IllegalStateException if the registry is not running
+     */
+    public long getWait(int entityId,TimeUnit unit) throws IllegalStateException{
+        return wait(0L,entityId,unit);
+    }
+    /**
+     * Fills the bucket for the key.
+     *
+     * @param id the player's UUID
+     */
+    public void reset(UUID id){
+        store.put(id.getMostSignificantBits(),id.getLeastSignificantBits(),0L,0L);
+    }
+    /**
+     * Fills the bucket for the key.
+     *
+     * @param entityId the entity id
+     */
+    public void reset(int entityId){
+        store.put(0L,entityId,0L,0L);
+    }
+    /**
+     * Gets the number of keys whose bucket is not full. This walks every entry so is meant for diagnostics.
+     *
+     * @return the number of keys with tokens taken
+     */
+    public int size(){
+        return store.size(registry.getCurrentTick());
+    }
+    /**
+     * Fills the bucket for every key.
+     */
+    public void clear(){
+        store.clear();
+    }
+    private long acquire(long hi,long lo,int tokens){
+        if (tokens < 1) {
+            throw new IllegalArgumentException("Tokens must be at least 1");
+        }
+        return store.acquire(hi,lo,registry.now(),tokens * refill,limit);
+    }
+    private int available(long hi,long lo){
+        final long now = registry.now();
+        final long until = store.get(hi,lo,now);
+        return until == 0L ? capacity : (int) ((limit - (until - now)) / refill);
+    }
+    private long wait(long hi,long lo,TimeUnit unit){
+        final long now = registry.now();
+        final long until = store.get(hi,lo,now);
+        return until == 0L ? 0L : Cooldown.ceil(Math.max(0L,until + refill - now - limit),unit);
+    }
+}
@@ -0,0 +1,112 @@
+package org.codemine.schedule;
+
+/**
+ * A <tt>TraceEvent</tt> is one entry in the trace recorded by a {@link org.codemine.schedule.SimulatedScheduler}: a task being
+ * scheduled, run, failing or being cancelled.
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class TraceEvent {
+
+    /**
+     * What happened to the task.
+     */
+    public enum Kind {
+        /**
+         * The task was scheduled.
+         */
+        SCHEDULED,
+        /**
+         * The task ran and returned normally.
+         */
+        RAN,
+        /**
+         * The task ran and threw an exception.
+         */
+        FAILED,
+        /**
+         * The task was cancelled.
+         */
+        CANCELLED
+    }
+
+    private final Kind kind;
+    private final long tick;
+    private final int taskId;
+    private final String label;
+    private final boolean sync;
+    private final long latencyNanos;
+    private final long durationNanos;
+
+    TraceEvent(Kind kind,long tick,int taskId,String label,boolean sync,long latencyNanos,long durationNanos){
+        this.kind = kind;
+        this.tick = tick;
+        this.taskId = taskId;
+        this.label = label;
+        this.sync = sync;
+        this.latencyNanos = latencyNanos;
+        this.durationNanos = durationNanos;
+    }
+    /**
+     * Gets what happened to the task.
+     *
+     * @return the kind of event
+     */
+    public Kind getKind(){
+        return kind;
+    }
+    /**
+     * Gets the tick the event happened on.
+     *
+     * @return the simulated tick
+     */
+    public long getTick(){
+        return tick;
+    }
+    /**
+     * Gets the id of the task.
+     *
+     * @return the task id
+     */
+    public int getTaskId(){
+        return taskId;
+    }
+    /**
+     * Gets the label of the task, the class name of the {@link org.codemine.schedule.BukkitRun} if it is one.
+     *
+     * @return the task label
+     * @see org.codemine.schedule.BukkitRun#getLabel()
+     */
+    public String getLabel(){
+        return label;
+    }
+    /**
+     * Returns true if the task runs on the main thread.
+     *
+     * @return true if sync
+     */
+    public boolean isSync(){
+        return sync;
+    }
+    /**
+     * Gets the real time between the start of the tick the task was due on and the task starting to run, which for asynchronous
+     * tasks includes the time waiting for a pool thread. 0 for events other than runs.
+     *
+     * @return the dispatch latency in nanoseconds
+     */
+    public long getLatencyNanos(){
+        return latencyNanos;
+    }
+    /**
+     * Gets the real time the task took to run. 0 for events other than runs.
+     *
+     * @return the run time in nanoseconds
+     */
+    public long getDurationNanos(){
+        return durationNanos;
+    }
+    @Override
+    public String toString(){
+        return tick + " " + kind + " " + taskId + " " + label + (sync ? " sync" : " async") + (kind == Kind.RAN || kind == Kind.FAILED ? " latency=" + latencyNanos + "ns duration=" + durationNanos + "ns" : "");
+    }
+}
@@ -0,0 +1,308 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * A <tt>Watchdog</tt> is a daemon thread that reports main thread tasks which run for longer than a threshold, naming the task,
+ * its plugin, how long it ran and where it spent its time.
+ * <p>Sync {@link org.codemine.schedule.BukkitRun}s and sync tasks on a {@link org.codemine.schedule.TimingWheel} tell the watchdog when
+ * they start and finish. That costs the main thread one clock read and one small object per run, the watchdog thread does the rest.
+ * While no task is over the threshold it only wakes up to check the clock. Once one is, it samples the main thread's stack every
+ * sample interval until the task finishes and then logs a {@link org.codemine.schedule.SlowTask} with the frames most samples were in,
+ * counting the first frame outside the JDK so the plugin's own code shows up rather than the collection it was iterating.</p>
+ * <p>When a tracked task runs another tracked task directly, such as the driver of a timing wheel, the inner task is reported on its
+ * own and the outer task's time starts again once the inner task returns. Only one watchdog runs at a time.</p>
+ * <hr>
+ * An example usage can be seen below.
+ * <tt>
+ * <pre>
+ * {@code
+ * Watchdog watchdog = new Watchdog(this);
+ * watchdog.setThreshold(50l,TimeUnit.MILLISECONDS);
+ * watchdog.start();
+ * }
+ * </pre></tt>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public class Watchdog {
+
+    /**
+     * The watchdog currently running, read by every main thread dispatch.
+     */
+    static volatile Watchdog active;
+
+    private static final Object LOCK = new Object();
+    private static final int MAX_DEPTH = 16;
+    private static final int MAX_SAMPLES = 1000;
+    private static final int MAX_REPORTS = 16;
+    private static final int HOT_FRAMES = 5;
+
+    private final Plugin plugin;
+    private final ArrayDeque<SlowTask> reports = new ArrayDeque<>();
+    private volatile long thresholdNanos = 50000000L;
+    private volatile long sampleNanos = 10000000L;
+    private volatile Thread thread;
+
+    // Main thread side, a stack of the tracked tasks currently running.
+    private final Runnable[] tasks = new Runnable[MAX_DEPTH];
+    private final Plugin[] owners = new Plugin[MAX_DEPTH];
+    private int depth;
+
+    // The innermost task, replaced as a whole so the watchdog thread never sees half of one run and half of another.
+    private volatile Running innermost;
+
+    /**
+     * Creates a watchdog that logs its reports to the plugin's logger.
+     *
+     * @param plugin the reference to the plugin that owns the watchdog
+     * @throws IllegalArgumentException if plugin is null
+     */
+    public Watchdog(Plugin plugin) throws IllegalArgumentException{
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        this.plugin = plugin;
+    }
+    /**
+     * Sets how long a task may run before it is sampled and reported, 50 milliseconds by default.
+     *
+     * @param threshold the longest run that is not reported
+     * @param unit      the unit of time the threshold relates to
+     * @throws IllegalArgumentException if the threshold is less than 1 millisecond
+     */
+    public void setThreshold(long threshold,TimeUnit unit) throws IllegalArgumentException{
+        this.thresholdNanos = nanos(threshold,unit);
+    }
+    /**
+     * Sets how often the stack of a slow task is sampled, 10 milliseconds by default.
+     *
+     * @param interval the time between samples
+     * @param unit     the unit of time the interval relates to
+     * @throws IllegalArgumentException if the interval is less than 1 millisecond
+     */
+    public void setSampleInterval(long interval,TimeUnit unit) throws IllegalArgumentException{
+        this.sampleNanos = nanos(interval,unit);
+    }
+    /**
+     * Starts the watchdog thread.
+     *
+     * @throws IllegalStateException if this or another watchdog is already running
+     */
+    public void start() throws IllegalStateException{
+        synchronized (LOCK) {
+            if (active != null) {
+                throw new IllegalStateException("Already running for " + active.plugin.getName());
+            }
+            final Thread created = new Thread(new Runnable() {
+
+                public void run(){
+                    watch();
+                }
+            },"BukkitRun-Watchdog");
+            created.setDaemon(true);
+            thread = created;
+            active = this;
+            created.start();
+        }
+    }
+    /**
+     * Stops the watchdog thread. Tasks already running finish untracked.
+     */
+    public void stop(){
+        synchronized (LOCK) {
+            if (active == this) {
+                active = null;
+            }
+            final Thread running = thread;
+            thread = null;
+            if (running != null) {
+                running.interrupt();
+            }
+        }
+    }
+    /**
+     * Returns true if the watchdog thread is running.
+     *
+     * @return true if running
+     */
+    public boolean isRunning(){
+        return thread != null;
+    }
+    /**
+     * Gets the most recent reports, oldest first.
+     *
+     * @return up to the last 16 reports
+     */
+    public List<SlowTask> getReports(){
+        synchronized (reports) {
+            return new ArrayList<>(reports);
+        }
+    }
+    /**
+     * Called on the main thread as a tracked task starts. The owner may be null for a {@link org.codemine.schedule.BukkitRun},
+     * it is looked up from the task if a report is made.
+     */
+    void enter(Runnable task,Plugin owner){
+        if (depth < MAX_DEPTH) {
+            tasks[depth] = task;
+            owners[depth] = owner;
+        }
+        depth++;
+        publish(task,owner,System.nanoTime());
+    }
+    /**
+     * Called on the main thread as a tracked task finishes, restarting the time of the task it was called from if there is one.
+     */
+    void exit(){
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        if (depth < MAX_DEPTH) {
+            tasks[depth] = null;
+            owners[depth] = null;
+        }
+        if (depth == 0) {
+            publish(null,null,0L);
+        } else {
+            final int top = Math.min(depth,MAX_DEPTH) - 1;
+            publish(tasks[top],owners[top],System.nanoTime());
+        }
+    }
+    private void publish(Runnable task,Plugin owner,long start){
+        innermost = task == null ? null : new Running(task,owner,start,Thread.currentThread());
+    }
+    private void watch(){
+        Profile profile = null;
+        while (thread == Thread.currentThread()) {
+            final Running current = innermost;
+            final long now = System.nanoTime();
+            if (profile != null && profile.run != current) {
+                report(profile,now);
+                profile = null;
+            }
+            long sleep = Math.max(1000000L,Math.min(thresholdNanos / 2L,50000000L));
+            if (current != null) {
+                final long elapsed = now - current.start;
+                if (elapsed >= thresholdNanos) {
+                    if (profile == null) {
+                        profile = new Profile(current);
+                    }
+                    if (profile.samples < MAX_SAMPLES) {
+                        profile.sample(current.thread.getStackTrace());
+                    }
+                    sleep = sampleNanos;
+                } else {
+                    sleep = Math.max(1000000L,thresholdNanos - elapsed);
+                }
+            }
+            try {
+                Thread.sleep(sleep / 1000000L,(int) (sleep % 1000000L));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (profile != null) {
+            report(profile,System.nanoTime());
+        }
+    }
+    private void report(Profile profile,long end){
+        final Running run = profile.run;
+        Plugin owner = run.owner;
+        if (owner == null && run.task instanceof BukkitRun.Dispatch) {
+            owner = ((BukkitRun.Dispatch) run.task).run.getOwner();
+        }
+        final SlowTask report = new SlowTask(TaskMetrics.label(run.task),owner == null ? null : owner.getName(),end - run.start,profile.samples,profile.hotFrames());
+        synchronized (reports) {
+            if (reports.size() == MAX_REPORTS) {
+                reports.removeFirst();
+            }
+            reports.addLast(report);
+        }
+        plugin.getLogger().log(Level.WARNING,report.toString());
+    }
+    private static long nanos(long duration,TimeUnit unit){
+        final long millis = unit.toMillis(duration);
+        if (millis < 1L) {
+            throw new IllegalArgumentException("Must be at least 1 millisecond");
+        }
+        return millis * 1000000L;
+    }
+
+    /**
+     * The innermost tracked task on the main thread, a new one is published for every start and every return to an outer task.
+     */
+    private static final class Running {
+
+        final Runnable task;
+        final Plugin owner;
+        final long start;
+        final Thread thread;
+
+        Running(Runnable task,Plugin owner,long start,Thread thread){
+            this.task = task;
+            this.owner = owner;
+            this.start = start;
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * The samples taken of one slow run.
+     */
+    private static final class Profile {
+
+        final Running run;
+        final Map<StackTraceElement,int[]> counts = new HashMap<>();
+        int samples;
+
+        Profile(Running run){
+            this.run = run;
+        }
+        void sample(StackTraceElement[] stack){
+            if (stack.length == 0) {
+                return;
+            }
+            StackTraceElement hot = stack[0];
+            for (StackTraceElement frame : stack) {
+                final String name = frame.getClassName();
+                if (!name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("sun.") && !name.startsWith("jdk.")) {
+                    hot = frame;
+                    break;
+                }
+            }
+            int[] count = counts.get(hot);
+            if (count == null) {
+                count = new int[1];
+                counts.put(hot,count);
+            }
+            count[0]++;
+            samples++;
+        }
+        List<String> hotFrames(){
+            final List<Map.Entry<StackTraceElement,int[]>> entries = new ArrayList<>(counts.entrySet());
+            Collections.sort(entries,new Comparator<Map.Entry<StackTraceElement,int[]>>() {
+
+                public int compare(Map.Entry<StackTraceElement,int[]> a,Map.Entry<StackTraceElement,int[]> b){
+                    return Integer.compare(b.getValue()[0],a.getValue()[0]);
+                }
+            });
+            final List<String> frames = new ArrayList<>(HOT_FRAMES);
+            for (int i = 0; i < entries.size() && i < HOT_FRAMES; i++) {
+                final int count = entries.get(i).getValue()[0];
+                frames.add((count * 100 / samples) + "% at " + entries.get(i).getKey());
+            }
+            return frames;
+        }
+    }
+}
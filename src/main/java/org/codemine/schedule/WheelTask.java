@@ -0,0 +1,124 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A <tt>WheelTask</tt> is the handle returned when a task is scheduled on a {@link org.codemine.schedule.TimingWheel}.
+ * <p>It implements {@link org.bukkit.scheduler.BukkitTask} so it can be used anywhere a task returned by the Bukkit scheduler
+ * is expected. The task ids handed out by a wheel are negative so they can never clash with the ids issued by Bukkit.</p>
+ * <p>Instances double as the nodes of the wheel's intrusive linked lists, this is what allows both scheduling and
+ * cancelling to be done in constant time.</p>
+ *
+ * @version 1.0-SNAPSHOT
+ */
+public final class WheelTask implements BukkitTask {
+
+    static final int SCHEDULED = 0;
+    static final int CANCELLED = 1;
+    static final int DONE = 2;
+    private static final AtomicIntegerFieldUpdater<WheelTask> STATE = AtomicIntegerFieldUpdater.newUpdater(WheelTask.class,"state");
+
+    final TimingWheel wheel;
+    final Runnable task;
+    final int id;
+    final boolean async;
+    final long delay;
+    final long period;
+    long deadline;
+    boolean wallClock;
+    long deadlineNanos;
+    long periodNanos;
+    WheelTask prev;
+    WheelTask next;
+    WheelTask groupPrev;
+    WheelTask groupNext;
+    int phase = -1;
+    long shift;
+    private volatile int state;
+
+    WheelTask(TimingWheel wheel){
+        this(wheel,null,0,false,0L,0L);
+        this.prev = this;
+        this.next = this;
+    }
+    WheelTask(TimingWheel wheel,Runnable task,int id,boolean async,long delay,long period){
+        this.wheel = wheel;
+        this.task = task;
+        this.id = id;
+        this.async = async;
+        this.delay = delay;
+        this.period = period;
+    }
+    /**
+     * Returns the taskId for the task.
+     *
+     * @return Task id number
+     */
+    @Override
+    public int getTaskId(){
+        return id;
+    }
+    /**
+     * Returns the Plugin that owns the wheel this task was scheduled on.
+     *
+     * @return The Plugin that owns the task
+     */
+    @Override
+    public Plugin getOwner(){
+        return wheel.getPlugin();
+    }
+    /**
+     * Returns true if the Task is a sync task.
+     *
+     * @return true if the task is run by main thread
+     */
+    @Override
+    public boolean isSync(){
+        return !async;
+    }
+    /**
+     * Returns true if the task was cancelled before it completed.
+     *
+     * @return true if the task has been cancelled
+     */
+    public boolean isCancelled(){
+        return state == CANCELLED;
+    }
+    /**
+     * Returns true if the task is a repeating task.
+     *
+     * @return true if the task has a period
+     */
+    public boolean isPeriodic(){
+        return period > 0L;
+    }
+    /**
+     * Will attempt to cancel this task. Calling this more than once or after the task has completed has no effect.
+     */
+    @Override
+    public void cancel(){
+        if (STATE.compareAndSet(this,SCHEDULED,CANCELLED)) {
+            wheel.cancelled(this);
+        }
+    }
+    /**
+     * Marks a one shot task as completed.
+     *
+     * @return true if this call moved the task out of the scheduled state
+     */
+    boolean complete(){
+        return STATE.compareAndSet(this,SCHEDULED,DONE);
+    }
+    boolean isLinked(){
+        return next != null;
+    }
+    void unlink(){
+        prev.next = next;
+        next.prev = prev;
+        prev = null;
+        next = null;
+    }
+}
@@ -0,0 +1,144 @@
+package org.codemine.schedule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class JournalTest {
+
+    private File file;
+    private Journal journal;
+
+    @Before
+    public void setUp() throws IOException{
+        file = File.createTempFile("journal",".dat");
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+        journal = new Journal(file);
+    }
+    @After
+    public void tearDown() throws IOException{
+        journal.close();
+        new File(file.getPath() + ".tmp").delete();
+        file.delete();
+    }
+    @Test
+    public void reopenReturnsThePendingTasksInOrder() throws IOException{
+        assertEquals(0,journal.open().size());
+        journal.schedule(task(1L));
+        journal.schedule(task(2L));
+        journal.schedule(task(3L));
+        journal.remove(2L);
+        journal.close();
+        final List<DurableTask> pending = journal.open();
+        assertEquals(ids(1L,3L),ids(pending));
+        assertArrayEquals(task(3L).getPayload(),pending.get(1).getPayload());
+        assertEquals("key-3",pending.get(1).getKey());
+        assertEquals(4,journal.records());
+        assertEquals(3L,journal.lastId());
+    }
+    @Test
+    public void reopenStopsAtAHalfWrittenRecord() throws IOException{
+        journal.open();
+        journal.schedule(task(1L));
+        journal.schedule(task(2L));
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file,"rw")) {
+            final long end = end(raf);
+            // A crash part way through an append: the length made it to disk, the rest of the record did not.
+            raf.seek(end);
+            raf.writeInt(64);
+            raf.writeInt(0x12345678);
+            raf.write(new byte[]{1,0,0,0});
+        }
+        assertEquals(ids(1L,2L),ids(journal.open()));
+        assertEquals(2,journal.records());
+        journal.schedule(task(3L));
+        journal.close();
+        assertEquals(ids(1L,2L,3L),ids(journal.open()));
+    }
+    @Test
+    public void reopenDropsARecordWhoseChecksumDoesNotMatch() throws IOException{
+        journal.open();
+        journal.schedule(task(1L));
+        journal.schedule(task(2L));
+        journal.schedule(task(3L));
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file,"rw")) {
+            final long last = last(raf);
+            raf.seek(last + 8L + 10L);
+            final int value = raf.read();
+            raf.seek(last + 8L + 10L);
+            raf.write(value ^ 0xff);
+        }
+        assertEquals(ids(1L,2L),ids(journal.open()));
+        assertEquals(2L,journal.lastId());
+        journal.schedule(task(4L));
+        journal.close();
+        assertEquals(ids(1L,2L,4L),ids(journal.open()));
+    }
+    @Test
+    public void compactionKeepsTheHighestId() throws IOException{
+        journal.open();
+        journal.schedule(task(1L));
+        journal.schedule(task(2L));
+        journal.remove(2L);
+        journal.compact(listOf(task(1L)));
+        journal.close();
+        assertEquals(ids(1L),ids(journal.open()));
+        assertEquals(2L,journal.lastId());
+    }
+    private static DurableTask task(long id){
+        return new DurableTask(id,"type","key-" + id,("payload-" + id).getBytes(StandardCharsets.UTF_8),1000L * id);
+    }
+    private static List<DurableTask> listOf(DurableTask task){
+        final List<DurableTask> list = new ArrayList<>();
+        list.add(task);
+        return list;
+    }
+    private static List<Long> ids(long... ids){
+        final List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+    private static List<Long> ids(List<DurableTask> tasks){
+        final List<Long> list = new ArrayList<>();
+        for (DurableTask task : tasks) {
+            list.add(task.getId());
+        }
+        return list;
+    }
+    /**
+     * Walks the records the way the journal lays them out, returning the offset of the last one.
+     */
+    private static long last(RandomAccessFile raf) throws IOException{
+        long position = 8L;
+        long last = -1L;
+        raf.seek(position);
+        int length;
+        while ((length = raf.readInt()) > 0) {
+            last = position;
+            position += 8L + length;
+            raf.seek(position);
+        }
+        return last;
+    }
+    private static long end(RandomAccessFile raf) throws IOException{
+        final long last = last(raf);
+        raf.seek(last);
+        return last + 8L + raf.readInt();
+    }
+}
@@ -0,0 +1,115 @@
+package org.codemine.schedule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MainThreadQueueTest {
+
+    private SimulatedScheduler scheduler;
+    private MainThreadQueue queue;
+    private List<String> ran;
+
+    @Before
+    public void setUp(){
+        scheduler = new SimulatedScheduler();
+        TaskScheduler.setDefault(scheduler);
+        queue = new MainThreadQueue(TestPlugins.create("QueueTest"));
+        queue.start();
+        ran = new ArrayList<>();
+    }
+    @After
+    public void tearDown(){
+        queue.stop();
+        TaskScheduler.setDefault(null);
+        scheduler.shutdown();
+    }
+    @Test
+    public void keyedPostReplacesWaitingWorkInPlace(){
+        queue.post(record("a"));
+        queue.post("chunk",record("b1"));
+        queue.post(record("c"));
+        queue.post("chunk",record("b2"));
+        queue.post("other",record("d"));
+        queue.post("chunk",record("b3"));
+        assertEquals(4L,queue.getDepth());
+        assertEquals(2L,queue.getMergedCount());
+        scheduler.tick();
+        assertEquals(Arrays.asList("a","b3","c","d"),ran);
+        assertEquals(0L,queue.getDepth());
+        assertEquals(4L,queue.getCompleted());
+    }
+    @Test
+    public void keyedPostQueuesAgainOnceTheWaitingWorkRan(){
+        queue.post("chunk",record("first"));
+        scheduler.tick();
+        queue.post("chunk",record("second"));
+        assertEquals(1L,queue.getDepth());
+        assertEquals(0L,queue.getMergedCount());
+        scheduler.tick();
+        assertEquals(Arrays.asList("first","second"),ran);
+    }
+    @Test
+    public void workPostedDuringADrainWaitsForTheNextTick(){
+        queue.post("chunk",new Runnable() {
+            @Override
+            public void run(){
+                ran.add("outer");
+                queue.post("chunk",record("inner"));
+            }
+        });
+        scheduler.tick();
+        assertEquals(Arrays.asList("outer"),ran);
+        assertEquals(1L,queue.getDepth());
+        assertEquals(0L,queue.getMergedCount());
+        scheduler.tick();
+        assertEquals(Arrays.asList("outer","inner"),ran);
+    }
+    @Test
+    public void postsFromOtherThreadsMergeAndRunOnTheMainThread() throws InterruptedException{
+        final int threads = 4;
+        final int posts = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final boolean[] offMain = new boolean[1];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run(){
+                    for (int i = 0; i < posts; i++) {
+                        queue.post(index % 2,new Runnable() {
+                            @Override
+                            public void run(){
+                                offMain[0] |= !scheduler.isPrimaryThread();
+                                ran.add("keyed");
+                            }
+                        });
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        scheduler.tick();
+        assertEquals(2,ran.size());
+        assertEquals((long) threads * posts,ran.size() + queue.getMergedCount());
+        assertEquals(0L,queue.getDepth());
+        assertFalse(offMain[0]);
+    }
+    private Runnable record(final String name){
+        return new Runnable() {
+            @Override
+            public void run(){
+                ran.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Logger;
+
+/**
+ * Creates stand-in plugins for tests, answering only what the scheduling classes ask of a plugin.
+ */
+final class TestPlugins {
+
+    private TestPlugins(){
+    }
+    static Plugin create(final String name){
+        final Logger logger = Logger.getLogger(name);
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(),new Class<?>[]{Plugin.class},new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy,Method method,Object[] args){
+                switch (method.getName()) {
+                    case "getName":
+                        return name;
+                    case "getLogger":
+                        return logger;
+                    case "isEnabled":
+                        return true;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return name;
+                    default:
+                        return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            }
+        });
+    }
+}
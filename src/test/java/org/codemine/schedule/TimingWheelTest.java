@@ -0,0 +1,126 @@
+package org.codemine.schedule;
+
+import org.bukkit.plugin.Plugin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    private SimulatedScheduler scheduler;
+    private Plugin plugin;
+    private TimingWheel wheel;
+
+    @Before
+    public void setUp(){
+        scheduler = new SimulatedScheduler();
+        TaskScheduler.setDefault(scheduler);
+        plugin = TestPlugins.create("WheelTest");
+        wheel = new TimingWheel(plugin);
+    }
+    @After
+    public void tearDown(){
+        wheel.stop();
+        TaskScheduler.setDefault(null);
+        scheduler.shutdown();
+    }
+    @Test
+    public void tasksRunOnTheTickTheyAreDueAtEveryLevel(){
+        final long[] delays = {1L,2L,63L,64L,65L,127L,128L,4095L,4096L,4097L,262143L,262144L,262145L,300000L};
+        final List<Recorder> recorders = new ArrayList<>();
+        for (long delay : delays) {
+            final Recorder recorder = new Recorder(delay);
+            wheel.runTaskLater(recorder,delay);
+            recorders.add(recorder);
+        }
+        wheel.start();
+        scheduler.advance(300001L);
+        for (Recorder recorder : recorders) {
+            assertEquals("Delay " + recorder.due,1,recorder.runs.size());
+            assertEquals("Delay " + recorder.due,recorder.due,(long) recorder.runs.get(0));
+        }
+        assertEquals(0,wheel.size());
+    }
+    @Test
+    public void tasksScheduledPartWayThroughASlotCascadeToTheirTick(){
+        wheel.start();
+        final long[] starts = {1L,37L,63L,4090L,4159L};
+        final long[] delays = {1L,27L,64L,100L,4000L,4097L,70000L};
+        final List<Recorder> recorders = new ArrayList<>();
+        for (long start : starts) {
+            scheduler.advance(start - wheel.getCurrentTick());
+            for (long delay : delays) {
+                final Recorder recorder = new Recorder(wheel.getCurrentTick() + delay);
+                wheel.runTaskLater(recorder,delay);
+                recorders.add(recorder);
+            }
+        }
+        scheduler.advance(80000L);
+        for (Recorder recorder : recorders) {
+            assertEquals("Due " + recorder.due,1,recorder.runs.size());
+            assertEquals("Due " + recorder.due,recorder.due,(long) recorder.runs.get(0));
+        }
+    }
+    @Test
+    public void tasksBeyondTheWheelWaitInTheOverflowList(){
+        final long delay = (1L << 24) + 5L;
+        final Recorder recorder = new Recorder(delay);
+        wheel.runTaskLater(recorder,delay);
+        // Driving the wheel directly, tens of millions of simulated ticks would make the test slow for no gain.
+        for (long i = 0L; i < delay + 10L; i++) {
+            wheel.tick();
+        }
+        assertEquals(1,recorder.runs.size());
+        assertEquals(delay,(long) recorder.runs.get(0));
+    }
+    @Test
+    public void timersRepeatEveryPeriodAfterTheFirstDelay(){
+        final Recorder recorder = new Recorder(5L);
+        final WheelTask task = wheel.runTaskTimer(recorder,5L,7L);
+        wheel.start();
+        scheduler.advance(5L + 7L * 100L);
+        assertEquals(101,recorder.runs.size());
+        for (int i = 0; i < recorder.runs.size(); i++) {
+            assertEquals(5L + 7L * i,(long) recorder.runs.get(i));
+        }
+        task.cancel();
+        scheduler.advance(50L);
+        assertEquals(101,recorder.runs.size());
+        assertEquals(0,wheel.size());
+    }
+    @Test
+    public void cancelledTasksDoNotRun(){
+        wheel.start();
+        final Recorder kept = new Recorder(5000L);
+        final Recorder cancelled = new Recorder(5000L);
+        wheel.runTaskLater(kept,5000L);
+        final WheelTask task = wheel.runTaskLater(cancelled,5000L);
+        scheduler.advance(10L);
+        task.cancel();
+        assertTrue(task.isCancelled());
+        scheduler.advance(6000L);
+        assertEquals(1,kept.runs.size());
+        assertEquals(0,cancelled.runs.size());
+        assertEquals(0,wheel.size());
+    }
+
+    private final class Recorder implements Runnable {
+
+        final long due;
+        final List<Long> runs = new ArrayList<>();
+
+        Recorder(long due){
+            this.due = due;
+        }
+        @Override
+        public void run(){
+            runs.add(wheel.getCurrentTick());
+        }
+    }
+}